@@ -0,0 +1,179 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntPredicate;
+
+// スキャンした原稿の周囲などの一様な余白を除いた、内容部分の範囲を求める
+// 上下左右の端からそれぞれ内側へ調べ、余白の色と異なる画素が一定数ある行（列）で止まる
+// 端から順に CHUNK 行ずつのタスクを並列度の数だけまとめて fork し、内容が見つかったまとまりで打ち切る
+// （ForkJoinPool の中から呼べばそのプール、それ以外は共通プールで実行する）
+public class AutoCrop {
+    // 余白の色との各チャンネルの差がこれを超える画素を内容とみなす
+    public static final int DEFAULT_TOLERANCE = 32;
+    // 行（列）の画素数の1/200以上が内容なら内容のある行とする（細かなゴミや汚れは無視する）
+    private static final int NOISE_DIVISOR = 200;
+    // 1つのタスクで調べる行（列）数
+    private static final int CHUNK = 16;
+
+    private AutoCrop() {
+    }
+
+    public static Rectangle findContent(BufferedImage image) {
+        return findContent(image, DEFAULT_TOLERANCE);
+    }
+
+    // 内容部分の範囲を返す。全体が余白なら null
+    public static Rectangle findContent(BufferedImage image, int tolerance) {
+        return findContent(image, backgroundColor(image), tolerance);
+    }
+
+    // 余白の色を指定する（画像の一部だけを調べるときは四隅が余白とは限らないため）
+    public static Rectangle findContent(BufferedImage image, int background, int tolerance) {
+        Scanner scanner = new Scanner(image, background, tolerance);
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        int top = search(0, height, false, scanner::isContentRow);
+        if (top < 0) {
+            return null;
+        }
+        int bottom = search(top, height, true, scanner::isContentRow);
+        // 左右は上端と下端の間だけを調べればよい。内容とみなせる列がなければ端の列にする
+        int y1 = bottom + 1;
+        int left = search(0, width, false, x -> scanner.isContentColumn(x, top, y1));
+        int right = search(Math.max(0, left), width, true, x -> scanner.isContentColumn(x, top, y1));
+        left = left < 0 ? 0 : left;
+        right = right < 0 ? width - 1 : right;
+        return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    // [from, to) を端から（reverse なら to - 1 から）調べ、isContent を満たす最初の位置を返す。なければ -1
+    private static int search(int from, int to, boolean reverse, IntPredicate isContent) {
+        int parallelism = ForkJoinTask.inForkJoinPool()
+            ? ForkJoinTask.getPool().getParallelism() : ForkJoinPool.getCommonPoolParallelism() + 1;
+        int count = to - from;
+        int wave = Math.max(1, parallelism) * CHUNK;
+        List<ForkJoinTask<Integer>> tasks = new ArrayList<>(parallelism);
+        for (int start = 0; start < count; start += wave) {
+            int end = Math.min(count, start + wave);
+            tasks.clear();
+            for (int c = start; c < end; c += CHUNK) {
+                int c0 = c;
+                int c1 = Math.min(end, c + CHUNK);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (int k = c0; k < c1; k++) {
+                        int i = reverse ? to - 1 - k : from + k;
+                        if (isContent.test(i)) {
+                            return i;
+                        }
+                    }
+                    return -1;
+                }).fork());
+            }
+            // 端に近いタスクの結果を優先する（すべて join してから次のまとまりへ進むか打ち切る）
+            int found = -1;
+            for (ForkJoinTask<Integer> task : tasks) {
+                int i = task.join();
+                if (found < 0) {
+                    found = i;
+                }
+            }
+            if (found >= 0) {
+                return found;
+            }
+        }
+        return -1;
+    }
+
+    // 四隅の画素のチャンネルごとの中央値を余白の色とする
+    public static int backgroundColor(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int[] corners = {image.getRGB(0, 0), image.getRGB(w - 1, 0), image.getRGB(0, h - 1), image.getRGB(w - 1, h - 1)};
+        int color = 0;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int[] values = new int[4];
+            for (int i = 0; i < 4; i++) {
+                values[i] = (corners[i] >> shift) & 0xff;
+            }
+            Arrays.sort(values);
+            color |= ((values[1] + values[2]) / 2) << shift;
+        }
+        return color;
+    }
+
+    // 調べた行・列の画素だけを読む（画像全体を変換しない）
+    private static class Scanner {
+        private final BufferedImage image;
+        private final int[] pixels; // 独立した TYPE_INT_RGB/ARGB なら画素配列を直接読む（それ以外は null）
+        private final int width;
+        private final int height;
+        private final int tolerance;
+        private final int background;
+
+        Scanner(BufferedImage image, int background, int tolerance) {
+            this.image = image;
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.tolerance = tolerance;
+            int type = image.getType();
+            boolean direct = (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && image.getRaster().getParent() == null && image.getRaster().getDataBuffer().getOffset() == 0;
+            this.pixels = direct ? ((DataBufferInt) image.getRaster().getDataBuffer()).getData() : null;
+            this.background = background;
+        }
+
+        private boolean differs(int p) {
+            return Math.abs(((p >> 16) & 0xff) - ((background >> 16) & 0xff)) > tolerance
+                || Math.abs(((p >> 8) & 0xff) - ((background >> 8) & 0xff)) > tolerance
+                || Math.abs((p & 0xff) - (background & 0xff)) > tolerance;
+        }
+
+        // data[offset], data[offset + stride], ... の length 画素のうち、内容とみなす画素数に達した時点で打ち切る
+        private boolean isContent(int[] data, int offset, int stride, int length) {
+            int threshold = Math.max(1, length / NOISE_DIVISOR);
+            int count = 0;
+            for (int i = 0, p = offset; i < length; i++, p += stride) {
+                if (differs(data[p]) && ++count >= threshold) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // 行・列の読み込みに使うバッファ（タスクごとに別のスレッドで呼ばれるため、スレッドごとに持つ）
+        private final ThreadLocal<int[]> buffers = new ThreadLocal<>();
+
+        private int[] buffer(int length) {
+            int[] buffer = buffers.get();
+            if (buffer == null || buffer.length < length) {
+                buffer = new int[length];
+                buffers.set(buffer);
+            }
+            return buffer;
+        }
+
+        boolean isContentRow(int y) {
+            if (pixels != null) {
+                return isContent(pixels, y * width, 1, width);
+            }
+            int[] buffer = buffer(width);
+            image.getRGB(0, y, width, 1, buffer, 0, width);
+            return isContent(buffer, 0, 1, width);
+        }
+
+        boolean isContentColumn(int x, int y0, int y1) {
+            if (pixels != null) {
+                return isContent(pixels, y0 * width + x, width, y1 - y0);
+            }
+            int[] buffer = buffer(y1 - y0);
+            image.getRGB(x, y0, 1, y1 - y0, buffer, 0, 1);
+            return isContent(buffer, 0, 1, y1 - y0);
+        }
+    }
+}
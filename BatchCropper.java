@@ -0,0 +1,135 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// マニフェストに従って画像を一括クロップするヘッドレスCLI
+//
+// マニフェストは1行1件のCSV（#で始まる行と空行は無視）:
+//   入力ファイル,x,y,幅,高さ,出力ファイル
+//
+// 実行例: java BatchCropper manifest.csv [スレッド数]
+public class BatchCropper {
+
+    static class Entry {
+        final File input;
+        final Rectangle rect;
+        final File output;
+
+        Entry(File input, Rectangle rect, File output) {
+            this.input = input;
+            this.rect = rect;
+            this.output = output;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java BatchCropper <manifest.csv> [threads]");
+            System.exit(1);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<Entry> entries = readManifest(new File(args[0]));
+
+        long start = System.nanoTime();
+        int failed = run(entries, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int succeeded = entries.size() - failed;
+        System.out.printf("%d cropped, %d failed in %.2f s (%.1f images/s, %d threads)%n",
+            succeeded, failed, seconds, succeeded / seconds, threads);
+        if (failed > 0) {
+            System.exit(2);
+        }
+    }
+
+    static List<Entry> readManifest(File manifest) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length != 6) {
+                    throw new IOException(manifest + ":" + lineNumber + ": expected 6 fields but got " + fields.length);
+                }
+                try {
+                    Rectangle rect = new Rectangle(
+                        Integer.parseInt(fields[1].trim()),
+                        Integer.parseInt(fields[2].trim()),
+                        Integer.parseInt(fields[3].trim()),
+                        Integer.parseInt(fields[4].trim()));
+                    entries.add(new Entry(resolve(manifest, fields[0].trim()), rect, resolve(manifest, fields[5].trim())));
+                } catch (NumberFormatException ex) {
+                    throw new IOException(manifest + ":" + lineNumber + ": " + ex.getMessage());
+                }
+            }
+        }
+        return entries;
+    }
+
+    // 相対パスはマニフェストの場所を基準にする
+    private static File resolve(File manifest, String path) {
+        File file = new File(path);
+        if (file.isAbsolute() || manifest.getAbsoluteFile().getParentFile() == null) {
+            return file;
+        }
+        return Paths.get(manifest.getAbsoluteFile().getParent(), path).toFile();
+    }
+
+    // 失敗した件数を返す
+    static int run(List<Entry> entries, int threads) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                futures.add(pool.submit(() -> {
+                    crop(entry);
+                    return null;
+                }));
+            }
+            int failed = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException ex) {
+                    failed++;
+                    System.err.println(entries.get(i).input + ": " + ex.getCause().getMessage());
+                }
+            }
+            return failed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static void crop(Entry entry) throws IOException {
+        ImageSource source = new ImageSource(entry.input);
+        Rectangle rect = CropGeometry.clamp(entry.rect, source.getWidth(), source.getHeight());
+        if (rect == null) {
+            throw new IOException("Crop rectangle is outside of the image: " + entry.rect);
+        }
+        BufferedImage cropped = source.readRegion(rect);
+
+        File parent = entry.output.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        // 形式は拡張子から決まる（JPEG ならアルファを除いて書き、一時ファイルから置き換える）
+        EncodeQueue.write(cropped, entry.output, EncodeOptions.defaults());
+    }
+}
@@ -0,0 +1,97 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// ベンチマーク共通の計測処理と合成画像
+// measure は予熱のあと一定時間ずつの計測を繰り返し、1回あたりの平均とばらつき（標準偏差）を求める
+// averageMillis は回数を決めて繰り返す（1回が数百msかかる大きな画像の比較用）
+// どちらも処理の結果を sink に書き込み、使われない結果が最適化で消えないようにする
+public class BenchmarkHarness {
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+    private static final int ITERATIONS = 5;
+
+    private static volatile long sink;
+
+    private BenchmarkHarness() {
+    }
+
+    // 計測する処理。結果は sink に書き込まれる（なければ null を返す）
+    public interface Task {
+        Object run() throws Exception;
+    }
+
+    public static class Result {
+        final String name;
+        final double mean; // 1回あたりの時間(ms)
+        final double stddev;
+
+        Result(String name, double mean, double stddev) {
+            this.name = name;
+            this.mean = mean;
+            this.stddev = stddev;
+        }
+    }
+
+    public static Result measure(String name, Task task) throws Exception {
+        runFor(task, WARMUP_NANOS);
+        double[] samples = new double[ITERATIONS];
+        double sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            samples[i] = runFor(task, ITERATION_NANOS);
+            sum += samples[i];
+        }
+        double mean = sum / ITERATIONS;
+        double squares = 0;
+        for (double sample : samples) {
+            squares += (sample - mean) * (sample - mean);
+        }
+        return new Result(name, mean, Math.sqrt(squares / (ITERATIONS - 1)));
+    }
+
+    // 1回あたりの平均時間(ms)
+    public static double averageMillis(Task task, int warmup, int iterations) throws Exception {
+        return averageMillis(task, warmup, iterations, () -> { });
+    }
+
+    // settle は予熱の後と計測の最後に呼ばれ、非同期の処理（画面への転送など）が終わるまで待つ
+    public static double averageMillis(Task task, int warmup, int iterations, Runnable settle) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            sink += System.identityHashCode(task.run());
+        }
+        settle.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += System.identityHashCode(task.run());
+        }
+        settle.run();
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+
+    // 指定時間が経つまで繰り返し（最低1回）、1回あたりの時間(ms)を返す
+    private static double runFor(Task task, long nanos) throws Exception {
+        long start = System.nanoTime();
+        long elapsed;
+        int count = 0;
+        do {
+            sink += System.identityHashCode(task.run());
+            count++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        return elapsed / 1e6 / count;
+    }
+
+    // グラデーションに斜めの線を重ねた、縮小やクロップの結果を目で確かめやすい画像
+    static BufferedImage createSyntheticImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.DARK_GRAY, width, height, Color.ORANGE));
+        g2d.fillRect(0, 0, width, height);
+        g2d.setColor(Color.WHITE);
+        int step = Math.max(1, width / 64);
+        for (int x = 0; x < width; x += step) {
+            g2d.drawLine(x, 0, width - x, height);
+        }
+        g2d.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,105 @@
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+// 多数の立方体を1つの TriangleMesh にまとめて描画する
+// 回転は毎フレーム頂点座標を再計算し、使い回す float 配列からまとめて書き込む
+public class BoxBatch {
+    // 立方体1つ分の頂点（javafx.scene.shape.Box と同じ並び）
+    private static final float[][] CORNERS = {
+        {-1, -1, -1}, {1, -1, -1}, {1, 1, -1}, {-1, 1, -1},
+        {-1, -1, 1}, {1, -1, 1}, {1, 1, 1}, {-1, 1, 1}
+    };
+    // 立方体1つ分の三角形（頂点番号。Box と同じ向き）
+    private static final int[] TRIANGLES = {
+        0, 2, 1,  2, 0, 3,
+        1, 6, 5,  6, 1, 2,
+        5, 7, 4,  7, 5, 6,
+        4, 3, 0,  3, 4, 7,
+        4, 1, 5,  1, 4, 0,
+        3, 6, 2,  6, 3, 7
+    };
+
+    private final int count;
+    private final float half;
+    private final float[] centers;
+    private final float[] points;
+    private final float[] rotated = new float[CORNERS.length * 3];
+    private final TriangleMesh mesh = new TriangleMesh();
+    private final MeshView view = new MeshView(mesh);
+
+    // centers は立方体ごとの中心座標 (x, y, z) の並び
+    public BoxBatch(float[] centers, float size) {
+        this.count = centers.length / 3;
+        this.centers = centers;
+        this.points = new float[count * CORNERS.length * 3];
+        this.half = size / 2;
+
+        int[] faces = new int[count * TRIANGLES.length * 2];
+        for (int i = 0; i < count; i++) {
+            int base = i * CORNERS.length;
+            for (int t = 0; t < TRIANGLES.length; t++) {
+                // 頂点番号とテクスチャ座標番号（すべて0）の組
+                faces[(i * TRIANGLES.length + t) * 2] = base + TRIANGLES[t];
+            }
+        }
+        mesh.getTexCoords().addAll(0, 0);
+        mesh.getFaces().setAll(faces);
+        // 平面ごとに陰影をつける（隣の面と法線を共有しない）
+        int[] smoothing = new int[count * TRIANGLES.length / 3];
+        for (int f = 0; f < smoothing.length; f++) {
+            smoothing[f] = 1 << ((f % (TRIANGLES.length / 3)) / 2);
+        }
+        mesh.getFaceSmoothingGroups().setAll(smoothing);
+
+        rotateCorners(0, 0);
+        writePoints();
+        mesh.getPoints().setAll(points);
+    }
+
+    public MeshView getView() {
+        return view;
+    }
+
+    // すべての立方体をそれぞれの中心でX軸・Y軸の順に回転させる（Rotate を2つ付けた Box と同じ）
+    public void setRotation(double angleX, double angleY) {
+        rotateCorners(angleX, angleY);
+        writePoints();
+        mesh.getPoints().set(0, points, 0, points.length);
+    }
+
+    private void rotateCorners(double angleX, double angleY) {
+        double ax = Math.toRadians(angleX);
+        double ay = Math.toRadians(angleY);
+        float cosX = (float) Math.cos(ax);
+        float sinX = (float) Math.sin(ax);
+        float cosY = (float) Math.cos(ay);
+        float sinY = (float) Math.sin(ay);
+        for (int k = 0; k < CORNERS.length; k++) {
+            float x = CORNERS[k][0] * half;
+            float y = CORNERS[k][1] * half;
+            float z = CORNERS[k][2] * half;
+            // 先にY軸回転、次にX軸回転（transforms = [rotateX, rotateY] の適用順）
+            float x1 = x * cosY + z * sinY;
+            float z1 = -x * sinY + z * cosY;
+            float y2 = y * cosX - z1 * sinX;
+            float z2 = y * sinX + z1 * cosX;
+            rotated[k * 3] = x1;
+            rotated[k * 3 + 1] = y2;
+            rotated[k * 3 + 2] = z2;
+        }
+    }
+
+    private void writePoints() {
+        int p = 0;
+        for (int i = 0; i < count; i++) {
+            float cx = centers[i * 3];
+            float cy = centers[i * 3 + 1];
+            float cz = centers[i * 3 + 2];
+            for (int k = 0; k < rotated.length; k += 3) {
+                points[p++] = cx + rotated[k];
+                points[p++] = cy + rotated[k + 1];
+                points[p++] = cz + rotated[k + 2];
+            }
+        }
+    }
+}
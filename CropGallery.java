@@ -0,0 +1,73 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+
+// クロップ履歴のサムネイル一覧
+// JListのセルレンダラーで描くため、履歴が何件あっても描画されるのは表示中のセルだけになる
+public class CropGallery extends JList<CropRecord> {
+    private static final int PADDING = 5;
+
+    private final List<CropRecord> records;
+    private final ThumbnailCache cache;
+    private final RecordListModel model;
+
+    public CropGallery(List<CropRecord> records, ThumbnailCache cache) {
+        this.records = records;
+        this.cache = cache;
+        this.model = new RecordListModel();
+        setModel(model);
+        setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // セルの大きさを固定して、全件の大きさ計算を避ける
+        int cellSize = cache.getThumbnailWidth() + PADDING * 2;
+        setFixedCellWidth(cellSize);
+        setFixedCellHeight(cellSize);
+        setCellRenderer(new ThumbnailRenderer());
+    }
+
+    // records の末尾に追加したあとに呼ぶ
+    public void recordAdded() {
+        int index = records.size() - 1;
+        model.fireAdded(index);
+        ensureIndexIsVisible(index);
+    }
+
+    // records の末尾から1件取り除いたあとに呼ぶ
+    public void recordRemoved() {
+        model.fireRemoved(records.size());
+    }
+
+    private class RecordListModel extends AbstractListModel<CropRecord> {
+        public int getSize() {
+            return records.size();
+        }
+
+        public CropRecord getElementAt(int index) {
+            return records.get(index);
+        }
+
+        void fireAdded(int index) {
+            fireIntervalAdded(this, index, index);
+        }
+
+        void fireRemoved(int index) {
+            fireIntervalRemoved(this, index, index);
+        }
+    }
+
+    private class ThumbnailRenderer extends JLabel implements ListCellRenderer<CropRecord> {
+        private final ThumbnailIcon icon = new ThumbnailIcon(cache, CropGallery.this::repaint);
+
+        ThumbnailRenderer() {
+            setOpaque(true);
+            setHorizontalAlignment(CENTER);
+            setIcon(icon);
+        }
+
+        public Component getListCellRendererComponent(JList<? extends CropRecord> list, CropRecord record,
+                                                      int index, boolean isSelected, boolean cellHasFocus) {
+            icon.setRecord(record);
+            setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+            return this;
+        }
+    }
+}
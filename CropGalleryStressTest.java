@@ -0,0 +1,109 @@
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+// クロップ履歴が大量にあるときのギャラリーの追加・スクロール描画時間を計測する
+// 比較用に、以前の「クロップごとにJPanelを追加するBoxLayout」でのレイアウト時間も測る
+// 実行例: java -Djava.awt.headless=true CropGalleryStressTest [件数]
+public class CropGalleryStressTest {
+    private static final int VIEW_WIDTH = 220;
+    private static final int VIEW_HEIGHT = 600;
+    private static final int SCROLL_FRAMES = 300;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        File source = File.createTempFile("gallery-stress", ".png");
+        source.deleteOnExit();
+        ImageIO.write(BenchmarkHarness.createSyntheticImage(2000, 1500), "png", source);
+
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                runGallery(source, count);
+                runLegacyPanels(count);
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        System.exit(0);
+    }
+
+    private static void runGallery(File source, int count) {
+        ThumbnailCache cache = new ThumbnailCache(32L * 1024 * 1024, 180);
+        List<CropRecord> records = new ArrayList<>();
+        CropGallery gallery = new CropGallery(records, cache);
+        JScrollPane scrollPane = new JScrollPane(gallery);
+        scrollPane.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+
+        // ImageViewerと同様に1件ずつ追加する
+        BufferedImage thumbnail = BenchmarkHarness.createSyntheticImage(180, 135);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            CropRecord record = new CropRecord(source, new Rectangle(i % 1000, i % 700, 400, 300), i);
+            records.add(record);
+            cache.put(record, thumbnail);
+            gallery.recordAdded();
+        }
+        layoutTree(scrollPane);
+        double addMs = (System.nanoTime() - start) / 1e6;
+
+        // 先頭から末尾までスクロールしながら描画する
+        BufferedImage screen = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        JViewport viewport = scrollPane.getViewport();
+        int maxY = Math.max(0, gallery.getPreferredSize().height - viewport.getExtentSize().height);
+        long maxFrame = 0;
+        start = System.nanoTime();
+        for (int frame = 0; frame < SCROLL_FRAMES; frame++) {
+            long frameStart = System.nanoTime();
+            viewport.setViewPosition(new Point(0, (int) ((long) maxY * frame / (SCROLL_FRAMES - 1))));
+            Graphics2D g2d = screen.createGraphics();
+            scrollPane.paint(g2d);
+            g2d.dispose();
+            maxFrame = Math.max(maxFrame, System.nanoTime() - frameStart);
+        }
+        double scrollMs = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("CropGallery:   %d crops added in %.1f ms, scroll frame avg %.3f ms, max %.3f ms (%d px)%n",
+            count, addMs, scrollMs / SCROLL_FRAMES, maxFrame / 1e6, maxY);
+    }
+
+    private static void runLegacyPanels(int count) {
+        JPanel panel = new JPanel();
+        panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+        JScrollPane scrollPane = new JScrollPane(panel);
+        scrollPane.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+        ImageIcon icon = new ImageIcon(BenchmarkHarness.createSyntheticImage(180, 135));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            JPanel croppedPanel = new JPanel();
+            croppedPanel.setLayout(new BoxLayout(croppedPanel, BoxLayout.Y_AXIS));
+            croppedPanel.add(new JLabel(icon));
+            croppedPanel.add(new JButton("保存"));
+            croppedPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+            panel.add(croppedPanel);
+        }
+        double addMs = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        layoutTree(scrollPane);
+        double layoutMs = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("Legacy panels: %d crops added in %.1f ms, one layout pass %.1f ms%n",
+            count, addMs, layoutMs);
+    }
+
+    // ヘッドレスでは画面に表示できないため、レイアウトを直接実行する
+    private static void layoutTree(Component component) {
+        if (component instanceof Container) {
+            Container container = (Container) component;
+            container.doLayout();
+            for (Component child : container.getComponents()) {
+                layoutTree(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import java.awt.*;
+
+// 画面上の選択範囲と元画像の座標を相互に変換する
+public class CropGeometry {
+    private CropGeometry() {
+    }
+
+    // 元画像の座標 (x, y) を画面の (originX + x * scale, originY + y * scale) に表示しているときの
+    // 画面上の選択範囲 selection を元画像の座標に変換する。端は近い方の画素の境界に合わせる
+    // 有効な範囲が残らない場合は null を返す
+    public static Rectangle toSource(Rectangle selection, double originX, double originY, double scale,
+                                     int sourceWidth, int sourceHeight) {
+        int x0 = (int) Math.round((selection.x - originX) / scale);
+        int y0 = (int) Math.round((selection.y - originY) / scale);
+        int x1 = (int) Math.round((selection.x + selection.width - originX) / scale);
+        int y1 = (int) Math.round((selection.y + selection.height - originY) / scale);
+        return clamp(new Rectangle(x0, y0, x1 - x0, y1 - y0), sourceWidth, sourceHeight);
+    }
+
+    // 元画像の範囲を画面の座標に変換する（toSource の逆。画素の境界は切り捨てで揃える）
+    public static Rectangle toScreen(Rectangle source, double originX, double originY, double scale) {
+        int x0 = (int) Math.floor(originX + source.x * scale);
+        int y0 = (int) Math.floor(originY + source.y * scale);
+        int x1 = (int) Math.floor(originX + (source.x + source.width) * scale);
+        int y1 = (int) Math.floor(originY + (source.y + source.height) * scale);
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    // 元画像からはみ出した部分を切り取る（ずらして収めると選択していない部分が入るため）
+    // 有効な範囲が残らない場合は null を返す
+    public static Rectangle clamp(Rectangle rect, int sourceWidth, int sourceHeight) {
+        Rectangle clamped = rect.intersection(new Rectangle(0, 0, sourceWidth, sourceHeight));
+
+        // 最小サイズチェック
+        if (clamped.isEmpty()) {
+            return null;
+        }
+        return clamped;
+    }
+}
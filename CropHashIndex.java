@@ -0,0 +1,310 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// 保存したクロップ画像の知覚ハッシュと保存先を記録し、セッションをまたいで重複保存を見つける索引
+// ファイルには追記するだけで、起動時にハッシュと各レコードの位置だけをメモリに読み込む（パスは一致したときに読む）
+//
+// 近いハッシュの検索は64ビットを16ビットずつ4つに分け、それぞれの値ごとの表で候補を絞る
+// 距離が3以下なら4つのうち少なくとも1つは完全に一致し、7以下なら1つは1ビット以内の違いに収まるため、
+// その値（と1ビット違いの値）の表だけを調べれば取りこぼしはない
+//
+// ファイル形式: マジックに続けて、レコード（ハッシュ long, 保存先パス writeUTF）の繰り返し
+public class CropHashIndex {
+    public static final int MAX_INDEXED_DISTANCE = 7;
+    // この距離以下のクロップ画像は同じものとみなす
+    public static final int DUPLICATE_DISTANCE = 4;
+    private static final int MAGIC = 0x50484958; // "PHIX"
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = 16;
+
+    private static CropHashIndex defaultIndex;
+
+    // 見つかった保存済みの画像
+    public static class Match {
+        private final long hash;
+        private final int distance;
+        private final File file;
+
+        Match(long hash, int distance, File file) {
+            this.hash = hash;
+            this.distance = distance;
+            this.file = file;
+        }
+
+        public long getHash() {
+            return hash;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        public File getFile() {
+            return file;
+        }
+    }
+
+    private final File file;
+    private long[] hashes = new long[1024];
+    private long[] offsets = new long[1024];
+    private int size;
+    // i 番目の16ビットが値 v のレコード番号の一覧は buckets[(i << 16) + v]
+    private final int[][] buckets = new int[CHUNKS << CHUNK_BITS][];
+    private final int[] bucketSizes = new int[CHUNKS << CHUNK_BITS];
+    private RandomAccessFile appender;
+
+    public CropHashIndex(File file) throws IOException {
+        this.file = file;
+        load();
+    }
+
+    // -DcropIndex.file で場所を変更できる。開けなければ null
+    public static synchronized CropHashIndex getDefault() {
+        if (defaultIndex == null) {
+            String path = System.getProperty("cropIndex.file",
+                new File(System.getProperty("user.home"), ".java_samples-crop-index").getPath());
+            try {
+                defaultIndex = new CropHashIndex(new File(path));
+            } catch (IOException ex) {
+                System.err.println("Failed to open crop index " + path + ": " + ex.getMessage());
+            }
+        }
+        return defaultIndex;
+    }
+
+    // 同じクロップ画像とみなすか。見分けられないハッシュ同士は同じとみなさない
+    public static boolean isDuplicate(long a, long b) {
+        return !PerceptualHash.isFlat(a) && !PerceptualHash.isFlat(b)
+            && PerceptualHash.distance(a, b) <= DUPLICATE_DISTANCE;
+    }
+
+    // 既定の索引を別スレッドで読み込んでおく（件数が多いと読み込みに時間がかかるため、起動時に呼ぶ）
+    public static void preload() {
+        Thread thread = new Thread(CropHashIndex::getDefault, "crop-index-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // 既定の索引から、まだファイルが残っている近い保存済みの画像を探す。なければ（索引が使えないか、見分けられないハッシュなら）null
+    // 最も近い画像が削除されていても、ほかに残っているものがあればそれを返す
+    public static Match findSaved(long hash) {
+        CropHashIndex index = PerceptualHash.isFlat(hash) ? null : getDefault();
+        if (index == null) {
+            return null;
+        }
+        try {
+            for (Match match : index.findAllNear(hash, DUPLICATE_DISTANCE)) {
+                if (match.getFile().isFile()) {
+                    return match;
+                }
+            }
+            return null;
+        } catch (IOException ex) {
+            System.err.println("Failed to read crop index: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // 既定の索引に保存した画像を記録する（見分けられないハッシュは記録しない）
+    public static void recordSaved(long hash, File file) {
+        CropHashIndex index = PerceptualHash.isFlat(hash) ? null : getDefault();
+        if (index == null) {
+            return;
+        }
+        try {
+            index.add(hash, file);
+        } catch (IOException ex) {
+            System.err.println("Failed to update crop index: " + ex.getMessage());
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // 距離が maxDistance 以下で最も近い保存済みの画像を返す。なければ null
+    public synchronized Match findNear(long hash, int maxDistance) throws IOException {
+        int best = -1;
+        int bestDistance = maxDistance + 1;
+        if (maxDistance > MAX_INDEXED_DISTANCE) {
+            // 表で絞り込めない距離なので全件を調べる
+            for (int i = 0; i < size && bestDistance > 0; i++) {
+                int d = PerceptualHash.distance(hash, hashes[i]);
+                if (d < bestDistance) {
+                    best = i;
+                    bestDistance = d;
+                }
+            }
+        } else {
+            boolean flips = maxDistance >= CHUNKS;
+            for (int chunk = 0; chunk < CHUNKS && bestDistance > 0; chunk++) {
+                int bucket = bucketOf(hash, chunk);
+                for (int bit = -1; bit < (flips ? CHUNK_BITS : 0); bit++) {
+                    // bit >= 0 のときはその1ビットだけ違う値の表を調べる
+                    int probe = bit < 0 ? bucket : bucket ^ (1 << bit);
+                    int[] ids = buckets[probe];
+                    for (int j = 0; j < bucketSizes[probe]; j++) {
+                        int d = PerceptualHash.distance(hash, hashes[ids[j]]);
+                        if (d < bestDistance) {
+                            best = ids[j];
+                            bestDistance = d;
+                        }
+                    }
+                }
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        return new Match(hashes[best], bestDistance, readPath(offsets[best]));
+    }
+
+    // 距離が maxDistance 以下の保存済みの画像を近い順にすべて返す
+    public synchronized List<Match> findAllNear(long hash, int maxDistance) throws IOException {
+        // 同じレコードが複数の表から見つかることがあるので、集合にまとめる
+        Set<Integer> ids = new HashSet<>();
+        if (maxDistance > MAX_INDEXED_DISTANCE) {
+            for (int i = 0; i < size; i++) {
+                ids.add(i);
+            }
+        } else {
+            boolean flips = maxDistance >= CHUNKS;
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                int bucket = bucketOf(hash, chunk);
+                for (int bit = -1; bit < (flips ? CHUNK_BITS : 0); bit++) {
+                    int probe = bit < 0 ? bucket : bucket ^ (1 << bit);
+                    for (int j = 0; j < bucketSizes[probe]; j++) {
+                        ids.add(buckets[probe][j]);
+                    }
+                }
+            }
+        }
+        List<Integer> near = new ArrayList<>();
+        for (int id : ids) {
+            if (PerceptualHash.distance(hash, hashes[id]) <= maxDistance) {
+                near.add(id);
+            }
+        }
+        near.sort(Comparator.comparingInt(id -> PerceptualHash.distance(hash, hashes[id])));
+        List<Match> matches = new ArrayList<>(near.size());
+        for (int id : near) {
+            matches.add(new Match(hashes[id], PerceptualHash.distance(hash, hashes[id]), readPath(offsets[id])));
+        }
+        return matches;
+    }
+
+    // 保存した画像を記録する（すぐにファイルへ追記する）
+    public synchronized void add(long hash, File savedAs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(hash);
+        out.writeUTF(savedAs.getAbsolutePath());
+        if (appender == null) {
+            appender = new RandomAccessFile(file, "rw");
+        }
+        long offset = appender.length();
+        appender.seek(offset);
+        appender.write(bytes.toByteArray());
+        put(hash, offset);
+    }
+
+    public synchronized void close() throws IOException {
+        if (appender != null) {
+            appender.close();
+            appender = null;
+        }
+    }
+
+    private void load() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        if (!file.exists() || file.length() == 0) {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+                out.writeInt(MAGIC);
+            }
+            return;
+        }
+        long offset = 4;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a crop index: " + file);
+            }
+            while (true) {
+                long hash;
+                int pathLength;
+                try {
+                    hash = in.readLong();
+                    pathLength = in.readUnsignedShort();
+                    skipFully(in, pathLength);
+                } catch (EOFException ex) {
+                    break;
+                }
+                put(hash, offset);
+                offset += 8 + 2 + pathLength;
+            }
+        }
+        if (offset < file.length()) {
+            // 追記の途中で終了したときの不完全なレコードを捨てる
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(offset);
+            }
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int n) throws IOException {
+        while (n > 0) {
+            int skipped = in.skipBytes(n);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            n -= skipped;
+        }
+    }
+
+    private void put(long hash, long offset) {
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        hashes[size] = hash;
+        offsets[size] = offset;
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            int bucket = bucketOf(hash, chunk);
+            int[] ids = buckets[bucket];
+            if (ids == null) {
+                ids = buckets[bucket] = new int[4];
+            } else if (bucketSizes[bucket] == ids.length) {
+                ids = buckets[bucket] = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[bucketSizes[bucket]++] = size;
+        }
+        size++;
+    }
+
+    private static int bucketOf(long hash, int chunk) {
+        return (chunk << CHUNK_BITS) + (int) ((hash >>> (chunk * CHUNK_BITS)) & 0xffff);
+    }
+
+    private File readPath(long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset + 8);
+            return new File(raf.readUTF());
+        }
+    }
+}
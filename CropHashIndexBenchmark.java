@@ -0,0 +1,61 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+// 100万件の索引に対する近いハッシュの検索時間を測る
+// 索引は一時ファイルに作り、読み込み直した時間も表示する
+// 実行例: java CropHashIndexBenchmark [件数]
+public class CropHashIndexBenchmark {
+    private static final int QUERIES = 100_000;
+    private static final int MAX_DISTANCE = 6;
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File file = File.createTempFile("crop-index", ".bin");
+        file.delete();
+        file.deleteOnExit();
+        Random random = new Random(1);
+        long[] stored = new long[entries];
+
+        long start = System.nanoTime();
+        CropHashIndex index = new CropHashIndex(file);
+        for (int i = 0; i < entries; i++) {
+            stored[i] = random.nextLong();
+            index.add(stored[i], new File("/crops/crop_" + i + ".png"));
+        }
+        index.close();
+        System.out.printf("added %,d entries in %.2f s (%.1f MB)%n",
+            entries, (System.nanoTime() - start) / 1e9, file.length() / 1048576.0);
+
+        start = System.nanoTime();
+        index = new CropHashIndex(file);
+        System.out.printf("loaded in %.0f ms%n", (System.nanoTime() - start) / 1e6);
+
+        // 半分は保存済みのハッシュから数ビット変えたもの、半分は無関係なもの
+        long[] nanos = new long[QUERIES];
+        int found = 0;
+        int expected = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            long query;
+            if (q % 2 == 0) {
+                query = stored[random.nextInt(entries)];
+                for (int b = random.nextInt(MAX_DISTANCE + 1); b > 0; b--) {
+                    query ^= 1L << random.nextInt(64);
+                }
+                expected++;
+            } else {
+                query = random.nextLong();
+            }
+            long t = System.nanoTime();
+            if (index.findNear(query, MAX_DISTANCE) != null) {
+                found++;
+            }
+            nanos[q] = System.nanoTime() - t;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%,d queries (max distance %d): found %,d of %,d near duplicates%n",
+            QUERIES, MAX_DISTANCE, found, expected);
+        System.out.printf("lookup p50 %.1f us, p99 %.1f us, max %.1f us%n",
+            nanos[QUERIES / 2] / 1e3, nanos[QUERIES * 99 / 100] / 1e3, nanos[QUERIES - 1] / 1e3);
+    }
+}
@@ -0,0 +1,239 @@
+import java.awt.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// クロップ操作の履歴を追記専用のファイルに記録し、次回の起動時に復元する
+// 元に戻す・やり直しも操作として追記する。記録するのは元ファイル・範囲・ハッシュだけで画素は持たないため、
+// 数千件の履歴でも復元は読み込みだけで終わり、画像は表示されるときに初めてデコードされる
+//
+// ファイル形式: マジックに続けて操作の繰り返し
+//   ADD  (byte 1, 元ファイルのパス writeUTF, x, y, 幅, 高さ int, ハッシュ long)
+//   UNDO (byte 2)
+//   REDO (byte 3)
+public class CropJournal {
+    private static final int MAGIC = 0x434a4e4c; // "CJNL"
+    private static final byte ADD = 1;
+    private static final byte UNDO = 2;
+    private static final byte REDO = 3;
+    // 記録された操作数が残っている履歴の件数に比べてこれ以上多ければ、開くときに書き直して詰める
+    private static final int COMPACT_RATIO = 2;
+    private static final int COMPACT_MIN_OPS = 1024;
+
+    private final File file; // null ならメモリ上だけで保持する
+    private final List<CropRecord> records = new ArrayList<>();
+    private final List<CropRecord> redoStack = new ArrayList<>(); // 末尾が次にやり直す操作
+    private final Map<String, File> sources = new HashMap<>(); // 同じ元ファイルは同じ File を共有する
+    private DataOutputStream out;
+    private int ops;
+
+    public CropJournal(File file) throws IOException {
+        this.file = file;
+        if (file == null) {
+            return;
+        }
+        replay();
+        if (ops > COMPACT_MIN_OPS && ops > COMPACT_RATIO * (records.size() + redoStack.size())) {
+            compact();
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    // -DcropJournal.dir のフォルダ（既定はホーム）に name ごとの履歴を開く。開けなければメモリ上だけで保持する
+    public static CropJournal open(String name) {
+        File dir = new File(System.getProperty("cropJournal.dir", System.getProperty("user.home")));
+        File file = new File(dir, ".java_samples-" + name + ".journal");
+        try {
+            return new CropJournal(file);
+        } catch (IOException ex) {
+            System.err.println("Failed to open crop journal " + file + ": " + ex.getMessage());
+            try {
+                return new CropJournal(null);
+            } catch (IOException never) {
+                throw new IllegalStateException(never);
+            }
+        }
+    }
+
+    // 現在の履歴（変更は add / undo / redo で行う）
+    public List<CropRecord> getRecords() {
+        return Collections.unmodifiableList(records);
+    }
+
+    // 最後の履歴（なければnull）
+    public CropRecord last() {
+        return records.isEmpty() ? null : records.get(records.size() - 1);
+    }
+
+    public boolean canUndo() {
+        return !records.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    public void add(CropRecord record) {
+        records.add(record);
+        redoStack.clear();
+        append(ADD, record);
+    }
+
+    // 最後の履歴を取り消して返す（なければnull）
+    public CropRecord undo() {
+        if (records.isEmpty()) {
+            return null;
+        }
+        CropRecord record = records.remove(records.size() - 1);
+        redoStack.add(record);
+        append(UNDO, null);
+        return record;
+    }
+
+    // 取り消した履歴を戻して返す（なければnull）
+    public CropRecord redo() {
+        if (redoStack.isEmpty()) {
+            return null;
+        }
+        CropRecord record = redoStack.remove(redoStack.size() - 1);
+        records.add(record);
+        append(REDO, null);
+        return record;
+    }
+
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    // 書き込みに失敗しても操作は続けられるようにする（その回の記録だけが失われる）
+    private void append(byte op, CropRecord record) {
+        if (out == null) {
+            return;
+        }
+        try {
+            write(out, op, record);
+            out.flush();
+            ops++;
+        } catch (IOException ex) {
+            System.err.println("Failed to write crop journal " + file + ": " + ex.getMessage());
+        }
+    }
+
+    private static void write(DataOutputStream out, byte op, CropRecord record) throws IOException {
+        out.writeByte(op);
+        if (op == ADD) {
+            Rectangle rect = record.getRect();
+            out.writeUTF(record.getSource().getPath());
+            out.writeInt(rect.x);
+            out.writeInt(rect.y);
+            out.writeInt(rect.width);
+            out.writeInt(rect.height);
+            out.writeLong(record.getHash());
+        }
+    }
+
+    private void replay() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        if (!file.exists() || file.length() == 0) {
+            try (DataOutputStream header = new DataOutputStream(new FileOutputStream(file))) {
+                header.writeInt(MAGIC);
+            }
+            return;
+        }
+        long offset = 4;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a crop journal: " + file);
+            }
+            while (true) {
+                int op;
+                try {
+                    op = in.read();
+                    if (op < 0) {
+                        break;
+                    }
+                    if (op == ADD) {
+                        String path = in.readUTF();
+                        Rectangle rect = new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                        long hash = in.readLong();
+                        File source = sources.computeIfAbsent(path, File::new);
+                        records.add(new CropRecord(source, rect, hash));
+                        redoStack.clear();
+                        // パスの長さは writeUTF の形式（修正UTF-8）でのバイト数
+                        offset += 1 + 2 + utfLength(path) + 16 + 8;
+                    } else if (op == UNDO) {
+                        if (!records.isEmpty()) {
+                            redoStack.add(records.remove(records.size() - 1));
+                        }
+                        offset += 1;
+                    } else if (op == REDO) {
+                        if (!redoStack.isEmpty()) {
+                            records.add(redoStack.remove(redoStack.size() - 1));
+                        }
+                        offset += 1;
+                    } else {
+                        break;
+                    }
+                } catch (EOFException ex) {
+                    break;
+                }
+                ops++;
+            }
+        }
+        if (offset < file.length()) {
+            // 追記の途中で終了したときの不完全な操作を捨てる
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(offset);
+            }
+        }
+    }
+
+    private static int utfLength(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += (c >= 0x0001 && c <= 0x007f) ? 1 : (c <= 0x07ff ? 2 : 3);
+        }
+        return length;
+    }
+
+    // 残っている履歴とやり直し待ちの操作だけを書き直す
+    // やり直し待ちは一度追加してから同じ数だけ取り消すことで、同じ順番で復元される
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream tmp = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            tmp.writeInt(MAGIC);
+            for (CropRecord record : records) {
+                write(tmp, ADD, record);
+            }
+            for (int i = redoStack.size() - 1; i >= 0; i--) {
+                write(tmp, ADD, redoStack.get(i));
+            }
+            for (int i = 0; i < redoStack.size(); i++) {
+                write(tmp, UNDO, null);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        ops = records.size() + 2 * redoStack.size();
+    }
+}
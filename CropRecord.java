@@ -0,0 +1,41 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+// クロップ履歴の1件。画素は持たず、元ファイルと範囲、重複判定用の知覚ハッシュだけを保持する
+public class CropRecord {
+    private final File source;
+    private final Rectangle rect;
+    private final long hash;
+
+    public CropRecord(File source, Rectangle rect, long hash) {
+        this.source = source;
+        this.rect = new Rectangle(rect);
+        this.hash = hash;
+    }
+
+    public File getSource() {
+        return source;
+    }
+
+    public Rectangle getRect() {
+        return new Rectangle(rect);
+    }
+
+    // PerceptualHash.of で求めたクロップ画像のハッシュ
+    public long getHash() {
+        return hash;
+    }
+
+    // 指定幅のサムネイルの大きさ
+    public Dimension thumbnailSize(int width) {
+        int height = Math.max(1, (int) Math.round((double) rect.height * width / rect.width));
+        return new Dimension(width, height);
+    }
+
+    // 元ファイルから該当範囲だけをデコードしてクロップ画像を作り直す
+    public BufferedImage materialize() throws IOException {
+        return new ImageSource(source).readRegion(rect);
+    }
+}
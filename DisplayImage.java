@@ -0,0 +1,122 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import javax.swing.Icon;
+
+// 表示サイズに合わせた画像を画面と互換の形式で保持し、描画のたびには転送・変換し直さない
+// Downscaler や RasterOps が画素配列を直接書いた画像は Java2D に管理されず、描画のたびに変換して転送されるため、
+// 一度だけ VolatileImage（-DdisplayImage=managed なら互換の BufferedImage）へ描いておき、それを転送する
+// 描き直すのは表示サイズが変わったときと、VolatileImage の内容が失われたときだけ（読み込み時は作り直す）
+public class DisplayImage implements Icon {
+    private static final boolean USE_VOLATILE = !"managed".equals(System.getProperty("displayImage"));
+
+    // width x height の大きさで (0, 0) から描く
+    public interface Renderer {
+        void render(Graphics2D g, int width, int height);
+    }
+
+    private final Renderer renderer;
+    private final int transparency;
+    private boolean useVolatile = USE_VOLATILE;
+    private int width;
+    private int height;
+    private GraphicsConfiguration config;
+    private VolatileImage accelerated;
+    private BufferedImage managed;
+
+    // 画像をそのままの大きさで表示する
+    public DisplayImage(BufferedImage image) {
+        this(image.getColorModel().getTransparency(), (g, w, h) -> g.drawImage(image, 0, 0, w, h, null));
+        setSize(image.getWidth(), image.getHeight());
+    }
+
+    public DisplayImage(int transparency, Renderer renderer) {
+        this.renderer = renderer;
+        this.transparency = transparency;
+    }
+
+    public void setSize(int width, int height) {
+        if (width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            flush();
+        }
+    }
+
+    // false なら互換の BufferedImage に描いておく（比較用）
+    void setVolatile(boolean useVolatile) {
+        this.useVolatile = useVolatile;
+        flush();
+    }
+
+    // 保持している画像を捨てる（次の描画で描き直す）
+    public void flush() {
+        if (accelerated != null) {
+            accelerated.flush();
+            accelerated = null;
+        }
+        managed = null;
+        config = null;
+    }
+
+    @Override
+    public int getIconWidth() {
+        return width;
+    }
+
+    @Override
+    public int getIconHeight() {
+        return height;
+    }
+
+    @Override
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        GraphicsConfiguration gc = ((Graphics2D) g).getDeviceConfiguration();
+        if (gc != config) {
+            // 別の画面に移ったときは作り直す
+            flush();
+            config = gc;
+        }
+        if (useVolatile) {
+            drawAccelerated(g, gc, x, y);
+        } else {
+            if (managed == null) {
+                managed = gc.createCompatibleImage(width, height, transparency);
+                render(managed.createGraphics());
+            }
+            g.drawImage(managed, x, y, null);
+        }
+    }
+
+    private void drawAccelerated(Graphics g, GraphicsConfiguration gc, int x, int y) {
+        do {
+            int status = accelerated == null ? VolatileImage.IMAGE_INCOMPATIBLE : accelerated.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                if (accelerated != null) {
+                    accelerated.flush();
+                }
+                accelerated = gc.createCompatibleVolatileImage(width, height, transparency);
+                status = VolatileImage.IMAGE_RESTORED;
+            }
+            if (status == VolatileImage.IMAGE_RESTORED) {
+                render(accelerated.createGraphics());
+            }
+            g.drawImage(accelerated, x, y, null);
+        } while (accelerated.contentsLost());
+    }
+
+    private void render(Graphics2D g) {
+        if (transparency != Transparency.OPAQUE) {
+            // VolatileImage の初期内容は不定なので透明にしてから描く
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, width, height);
+            g.setComposite(AlphaComposite.SrcOver);
+        }
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        renderer.render(g, width, height);
+        g.dispose();
+    }
+}
@@ -0,0 +1,130 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import javax.swing.*;
+
+// 再描画1回あたりの時間を、これまでの描画方法と DisplayImage（VolatileImage / 互換の BufferedImage）で比較する
+// 画面があればウィンドウを開いて paintImmediately で計測し（Swing のバックバッファと画面への転送を含む）、
+// ヘッドレスなら BufferedImage への描画（ソフトウェア描画）だけを計測する
+//
+// 実行例（Linux）:
+//   java -Dsun.java2d.xrender=true DisplayImageBenchmark    XRender パイプライン
+//   java -Dsun.java2d.xrender=false DisplayImageBenchmark   X11（ソフトウェア描画して転送）パイプライン
+//   java -Djava.awt.headless=true DisplayImageBenchmark     画面なし
+public class DisplayImageBenchmark {
+    private static final int PANEL_WIDTH = 1200;
+    private static final int PANEL_HEIGHT = 800;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+
+    // 計測する描画方法
+    private interface Painter {
+        void paint(Graphics g);
+    }
+
+    public static void main(String[] args) throws Exception {
+        // 24MPの合成画像から、各ビューアと同じ方法で表示用の画像を作る
+        BufferedImage photo = BenchmarkHarness.createSyntheticImage(6000, 4000);
+        BufferedImage viewerImage = Downscaler.scaleToHeight(photo, 500);
+        BufferedImage cropped = RasterOps.crop(photo, new Rectangle(1000, 1000, 3000, 2000));
+        ImagePyramid pyramid = new ImagePyramid(Downscaler.scaleToWidth(photo, 1920));
+        Rectangle fit = new Rectangle(0, 0, PANEL_WIDTH, PANEL_WIDTH * 2 / 3);
+        BufferedImage fitted = new BufferedImage(fit.width, fit.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D fg = fitted.createGraphics();
+        pyramid.draw(fg, fit);
+        fg.dispose();
+        Rectangle preview = new Rectangle(0, 0, 600, 400);
+
+        System.out.println("pipeline: " + pipeline());
+        System.out.printf("%-34s %12s %14s %14s%n", "case", "before(ms)", "volatile(ms)", "managed(ms)");
+        ImageIcon viewerIcon = new ImageIcon(viewerImage);
+        Object[][] cases = {
+            // ImageViewer: Downscaler の結果（画素配列を直接書いた画像）を ImageIcon で描く
+            {"ImageViewer 750x500", (Painter) g -> viewerIcon.paintIcon(null, g, 0, 0),
+                (DisplayFactory) () -> new DisplayImage(viewerImage)},
+            // ImageCropper 左: ピラミッドから描いた BufferedImage を描く
+            {"ImageCropper fit 1200x800", (Painter) g -> g.drawImage(fitted, 0, 0, null),
+                (DisplayFactory) () -> sized(new DisplayImage(Transparency.OPAQUE,
+                    (g2d, w, h) -> pyramid.draw(g2d, new Rectangle(0, 0, w, h))), fit)},
+            // ImageCropper 右: 原寸のクロップ画像を毎回縮小して描く
+            {"ImageCropper preview 3000x2000", (Painter) g -> g.drawImage(cropped, 0, 0, preview.width, preview.height, null),
+                (DisplayFactory) () -> sized(new DisplayImage(Transparency.OPAQUE,
+                    (g2d, w, h) -> g2d.drawImage(cropped, 0, 0, w, h, null)), preview)},
+        };
+        for (Object[] c : cases) {
+            double before = measure((Painter) c[1]);
+            double accelerated = measure(painterFor(((DisplayFactory) c[2]).create(), true));
+            double managed = measure(painterFor(((DisplayFactory) c[2]).create(), false));
+            System.out.printf("%-34s %12.3f %14.3f %14.3f%n", c[0], before, accelerated, managed);
+        }
+        System.exit(0);
+    }
+
+    private interface DisplayFactory {
+        DisplayImage create();
+    }
+
+    private static DisplayImage sized(DisplayImage image, Rectangle size) {
+        image.setSize(size.width, size.height);
+        return image;
+    }
+
+    private static Painter painterFor(DisplayImage image, boolean useVolatile) {
+        image.setVolatile(useVolatile);
+        return g -> image.paintIcon(null, g, 0, 0);
+    }
+
+    private static String pipeline() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return "headless (software, BufferedImage)";
+        }
+        String xrender = System.getProperty("sun.java2d.xrender");
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getClass().getSimpleName()
+            + (xrender != null ? ", sun.java2d.xrender=" + xrender : "");
+    }
+
+    // 1回あたりの平均時間(ms)
+    private static double measure(Painter painter) throws Exception {
+        if (GraphicsEnvironment.isHeadless()) {
+            BufferedImage screen = new BufferedImage(PANEL_WIDTH, PANEL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+            return time(() -> {
+                Graphics2D g = screen.createGraphics();
+                painter.paint(g);
+                g.dispose();
+            });
+        }
+        double[] result = new double[1];
+        Exception[] error = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            JFrame frame = new JFrame("DisplayImageBenchmark");
+            JPanel panel = new JPanel() {
+                @Override
+                protected void paintComponent(Graphics g) {
+                    super.paintComponent(g);
+                    painter.paint(g);
+                }
+            };
+            panel.setPreferredSize(new Dimension(PANEL_WIDTH, PANEL_HEIGHT));
+            frame.add(panel);
+            frame.pack();
+            frame.setVisible(true);
+            try {
+                result[0] = time(() -> panel.paintImmediately(0, 0, PANEL_WIDTH, PANEL_HEIGHT));
+            } catch (Exception ex) {
+                error[0] = ex;
+            }
+            frame.dispose();
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return result[0];
+    }
+
+    // 画面への転送が終わるまで待ってから時間を求める
+    private static double time(Runnable task) throws Exception {
+        return BenchmarkHarness.averageMillis(() -> {
+            task.run();
+            return null;
+        }, WARMUP, ITERATIONS, Toolkit.getDefaultToolkit()::sync);
+    }
+}
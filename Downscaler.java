@@ -0,0 +1,146 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// getScaledInstance(SCALE_SMOOTH) の代わりに使う縮小処理
+// 目標サイズの2倍を下回るまで2x2平均で半分に縮小し、最後にバイキュービック補間で目標サイズに合わせる
+public class Downscaler {
+    // この画素数以上の画像は行単位のバンドに分けて並列に縮小する
+    private static final long PARALLEL_THRESHOLD = 4_000_000L;
+    // 並列処理で1タスクが担当する最小行数
+    private static final int MIN_BAND_ROWS = 64;
+
+    private Downscaler() {
+    }
+
+    // 縦横比を保って高さを合わせる
+    public static BufferedImage scaleToHeight(BufferedImage src, int height) {
+        int width = Math.max(1, (int) Math.round((double) src.getWidth() * height / src.getHeight()));
+        return scale(src, width, height);
+    }
+
+    // 縦横比を保って幅を合わせる
+    public static BufferedImage scaleToWidth(BufferedImage src, int width) {
+        int height = Math.max(1, (int) Math.round((double) src.getHeight() * width / src.getWidth()));
+        return scale(src, width, height);
+    }
+
+    public static BufferedImage scale(BufferedImage src, int width, int height) {
+        return scale(src, width, height, (long) src.getWidth() * src.getHeight() >= PARALLEL_THRESHOLD);
+    }
+
+    // 戻り値は常に src とは別の画像になる
+    public static BufferedImage scale(BufferedImage src, int width, int height, boolean parallel) {
+        BufferedImage current = src;
+        while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+            if (current == src) {
+                current = toIntImage(src);
+            }
+            current = halve(current, parallel);
+        }
+        if (current != src && current.getWidth() == width && current.getHeight() == height) {
+            return current;
+        }
+
+        BufferedImage dst = new BufferedImage(width, height, imageType(src));
+        Graphics2D g2d = dst.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.drawImage(current, 0, 0, width, height, null);
+        g2d.dispose();
+        return dst;
+    }
+
+    private static int imageType(BufferedImage image) {
+        return image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    }
+
+    // 画素配列を直接扱えるよう、独立したTYPE_INT_RGB/ARGBの画像にする
+    private static BufferedImage toIntImage(BufferedImage src) {
+        int type = imageType(src);
+        if (type == BufferedImage.TYPE_INT_RGB) {
+            return RasterOps.toIntRGB(src);
+        }
+        if (src.getType() == type) {
+            if (src.getRaster().getParent() == null && src.getRaster().getDataBuffer().getOffset() == 0) {
+                return src;
+            }
+            return RasterOps.crop(src, new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+        }
+        BufferedImage copy = new BufferedImage(src.getWidth(), src.getHeight(), type);
+        Graphics2D g2d = copy.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(src, 0, 0, null);
+        g2d.dispose();
+        return copy;
+    }
+
+    // 2x2画素の平均で縦横半分にする
+    private static BufferedImage halve(BufferedImage src, boolean parallel) {
+        int srcWidth = src.getWidth();
+        int dstWidth = srcWidth / 2;
+        int dstHeight = src.getHeight() / 2;
+        BufferedImage dst = new BufferedImage(dstWidth, dstHeight, src.getType());
+        int[] srcPixels = ((DataBufferInt) src.getRaster().getDataBuffer()).getData();
+        int[] dstPixels = ((DataBufferInt) dst.getRaster().getDataBuffer()).getData();
+
+        HalveTask task = new HalveTask(srcPixels, srcWidth, dstPixels, dstWidth, 0, dstHeight);
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            task.halveRows();
+        }
+        return dst;
+    }
+
+    private static class HalveTask extends RecursiveAction {
+        private final int[] src;
+        private final int srcWidth;
+        private final int[] dst;
+        private final int dstWidth;
+        private final int rowStart;
+        private final int rowEnd;
+
+        HalveTask(int[] src, int srcWidth, int[] dst, int dstWidth, int rowStart, int rowEnd) {
+            this.src = src;
+            this.srcWidth = srcWidth;
+            this.dst = dst;
+            this.dstWidth = dstWidth;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+
+        @Override
+        protected void compute() {
+            if (rowEnd - rowStart <= MIN_BAND_ROWS) {
+                halveRows();
+                return;
+            }
+            int mid = (rowStart + rowEnd) >>> 1;
+            invokeAll(new HalveTask(src, srcWidth, dst, dstWidth, rowStart, mid),
+                      new HalveTask(src, srcWidth, dst, dstWidth, mid, rowEnd));
+        }
+
+        void halveRows() {
+            for (int y = rowStart; y < rowEnd; y++) {
+                int top = 2 * y * srcWidth;
+                int bottom = top + srcWidth;
+                int out = y * dstWidth;
+                for (int x = 0; x < dstWidth; x++) {
+                    int p0 = src[top + 2 * x];
+                    int p1 = src[top + 2 * x + 1];
+                    int p2 = src[bottom + 2 * x];
+                    int p3 = src[bottom + 2 * x + 1];
+                    // 各チャンネルを4画素で平均（+2は四捨五入）
+                    int a = (((p0 >>> 24) + (p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24) + 2) >> 2);
+                    int r = ((((p0 >> 16) & 0xff) + ((p1 >> 16) & 0xff) + ((p2 >> 16) & 0xff) + ((p3 >> 16) & 0xff) + 2) >> 2);
+                    int g = ((((p0 >> 8) & 0xff) + ((p1 >> 8) & 0xff) + ((p2 >> 8) & 0xff) + ((p3 >> 8) & 0xff) + 2) >> 2);
+                    int b = (((p0 & 0xff) + (p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff) + 2) >> 2);
+                    dst[out + x] = (a << 24) | (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import javax.swing.ImageIcon;
+
+// 1/10/50MPの入力で getScaledInstance(SCALE_SMOOTH) と Downscaler の縮小時間を比較する
+// 実行例: java -Xmx4g DownscalerBenchmark [高さ]
+public class DownscalerBenchmark {
+    private static final int[] MEGAPIXELS = {1, 10, 50};
+    private static final int WARMUP = 2;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int targetHeight = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+
+        System.out.printf("%6s %12s %18s %16s %16s%n",
+            "MP", "size", "getScaledInst(ms)", "sequential(ms)", "parallel(ms)");
+        for (int mp : MEGAPIXELS) {
+            // 4:3 の合成画像
+            int width = (int) Math.sqrt(mp * 1e6 * 4 / 3);
+            int height = (int) (width * 3L / 4);
+            BufferedImage image = BenchmarkHarness.createSyntheticImage(width, height);
+
+            double legacyMs = measure(() -> {
+                // ImageViewer と同様に ImageIcon 経由で縮小結果を確定させる
+                Image scaled = image.getScaledInstance(-1, targetHeight, Image.SCALE_SMOOTH);
+                return new ImageIcon(scaled).getIconWidth();
+            });
+            double sequentialMs = measure(() -> Downscaler.scale(image,
+                image.getWidth() * targetHeight / image.getHeight(), targetHeight, false));
+            double parallelMs = measure(() -> Downscaler.scale(image,
+                image.getWidth() * targetHeight / image.getHeight(), targetHeight, true));
+
+            System.out.printf("%6d %12s %18.1f %16.1f %16.1f%n",
+                mp, width + "x" + height, legacyMs, sequentialMs, parallelMs);
+        }
+    }
+
+    private static double measure(BenchmarkHarness.Task task) throws Exception {
+        return BenchmarkHarness.averageMillis(task, WARMUP, ITERATIONS);
+    }
+}
@@ -0,0 +1,85 @@
+import javax.swing.*;
+import java.awt.*;
+import java.io.File;
+import java.util.Locale;
+
+// 画像保存時の形式と圧縮品質
+// 形式は保存先の名前を決めるとき（一括保存や、拡張子なしで保存したとき）に使う
+public class EncodeOptions {
+    // 品質を指定しない（ライターの既定値を使う）
+    public static final float DEFAULT_QUALITY = -1f;
+    public static final String PNG = "png";
+    public static final String JPEG = "jpg";
+
+    private final String format;
+    private final float quality;
+
+    public EncodeOptions(String format, float quality) {
+        this.format = format;
+        this.quality = quality;
+    }
+
+    public static EncodeOptions defaults() {
+        return new EncodeOptions(PNG, DEFAULT_QUALITY);
+    }
+
+    // 形式名（PNG または JPEG）。拡張子としてもそのまま使える
+    public String getFormat() {
+        return format;
+    }
+
+    // 0.0〜1.0。JPEGでは画質、PNGでは1.0に近いほど圧縮が弱く速い
+    public float getQuality() {
+        return quality;
+    }
+
+    public boolean hasQuality() {
+        return quality >= 0f;
+    }
+
+    // 拡張子から形式名を決める（拡張子がなければpng）
+    public static String formatOf(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf(".");
+        if (dot == -1) {
+            return PNG;
+        }
+        String extension = name.substring(dot + 1).toLowerCase();
+        return extension.equals("jpeg") ? JPEG : extension;
+    }
+
+    // 形式と品質を選ぶダイアログを表示する。キャンセルされたら null を返す
+    // 呼び出し元の画面に合わせて、日本語なら日本語で表示する
+    public static EncodeOptions showDialog(Component parent, EncodeOptions current, Locale locale) {
+        boolean ja = locale.getLanguage().equals(Locale.JAPANESE.getLanguage());
+        JComboBox<String> format = new JComboBox<>(new String[] {"PNG", "JPEG"});
+        format.setSelectedIndex(current.getFormat().equals(JPEG) ? 1 : 0);
+        JCheckBox useDefault = new JCheckBox(ja ? "既定の品質を使う" : "Use writer default", !current.hasQuality());
+        JSlider slider = new JSlider(0, 100, current.hasQuality() ? Math.round(current.getQuality() * 100) : 75);
+        slider.setMajorTickSpacing(25);
+        slider.setPaintTicks(true);
+        slider.setPaintLabels(true);
+        slider.setEnabled(!useDefault.isSelected());
+        useDefault.addActionListener(e -> slider.setEnabled(!useDefault.isSelected()));
+
+        JPanel formatPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        formatPanel.add(new JLabel(ja ? "形式: " : "Format: "));
+        formatPanel.add(format);
+        JPanel qualityPanel = new JPanel(new BorderLayout());
+        qualityPanel.add(new JLabel(ja ? "品質（JPEG: 画質、PNG: 高いほど速く大きい）"
+                                       : "Quality (JPEG: image quality, PNG: higher is faster / larger)"), BorderLayout.NORTH);
+        qualityPanel.add(slider, BorderLayout.CENTER);
+        qualityPanel.add(useDefault, BorderLayout.SOUTH);
+        JPanel panel = new JPanel(new BorderLayout(0, 8));
+        panel.add(formatPanel, BorderLayout.NORTH);
+        panel.add(qualityPanel, BorderLayout.CENTER);
+
+        int result = JOptionPane.showConfirmDialog(parent, panel, ja ? "保存の設定" : "Save Options",
+                                                   JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (result != JOptionPane.OK_OPTION) {
+            return null;
+        }
+        String selected = format.getSelectedIndex() == 1 ? JPEG : PNG;
+        return new EncodeOptions(selected, useDefault.isSelected() ? DEFAULT_QUALITY : slider.getValue() / 100f);
+    }
+}
@@ -0,0 +1,136 @@
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 画像の保存をバックグラウンドで複数同時に行うキュー
+// 画素の用意（クロップ画像のデコードなど）と書き込みを1つのタスクとして流す
+public class EncodeQueue {
+
+    // 1ファイル分の保存結果
+    public static class Result {
+        private final File file;
+        private final long bytes;
+        private final long latencyNanos;
+
+        Result(File file, long bytes, long latencyNanos) {
+            this.file = file;
+            this.bytes = bytes;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        // 投入から書き込み完了までの時間
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+
+    private final ExecutorService executor;
+
+    public EncodeQueue(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "encoder-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<Result> submit(Callable<BufferedImage> image, File file, EncodeOptions options) {
+        long submitted = System.nanoTime();
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                write(image.call(), file, options);
+                future.complete(new Result(file, file.length(), System.nanoTime() - submitted));
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
+    }
+
+    // 拡張子の形式で書き込む。品質が指定されていれば ImageWriteParam で圧縮設定を行う
+    public static void write(BufferedImage image, File file, EncodeOptions options) throws IOException {
+        String format = EncodeOptions.formatOf(file);
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No writer for format: " + format);
+        }
+        ImageWriter writer = writers.next();
+        // JPEGはアルファチャンネルを書けないためRGBに変換する
+        if (format.equals("jpg") && image.getColorModel().hasAlpha()) {
+            image = toRGB(image);
+        }
+
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (options.hasQuality() && param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            if (param.getCompressionType() == null) {
+                param.setCompressionType(param.getCompressionTypes()[0]);
+            }
+            param.setCompressionQuality(options.getQuality());
+        }
+
+        // 書き込みに失敗・中断しても既存のファイルが残るよう、同じフォルダの一時ファイルに書いてから置き換える
+        File temp = File.createTempFile("." + file.getName() + "-", ".tmp", file.getAbsoluteFile().getParentFile());
+        boolean replaced = false;
+        try {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp)) {
+                if (out == null) {
+                    throw new IOException("Cannot write " + file);
+                }
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            replace(temp, file);
+            replaced = true;
+        } finally {
+            if (!replaced) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static void replace(File temp, File file) throws IOException {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static BufferedImage toRGB(BufferedImage image) {
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = rgb.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return rgb;
+    }
+}
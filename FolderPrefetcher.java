@@ -0,0 +1,283 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// フォルダ内の画像を前後に移動しながら表示するための先読みキャッシュ
+// 表示中の画像の前後 radius 枚を並列にデコード・縮小し、使用バイト数の上限付きで保持する
+// デコード中の画像も、始める前に画像の大きさから見積もった分を上限に含めて予約する（同時に数枚を
+// デコードしても上限を超えないように）。予約できない先読みは行わない（表示中の画像は常に読む）
+// 先読みした画像は開き直すとは限らないので RasterCache には書き込まない
+public class FolderPrefetcher {
+    // デコード済みの1枚（原寸の TYPE_INT_RGB と表示用の縮小画像）
+    public static class Entry {
+        private final File file;
+        private final BufferedImage image;
+        private final BufferedImage displayImage;
+
+        Entry(File file, BufferedImage image, BufferedImage displayImage) {
+            this.file = file;
+            this.image = image;
+            this.displayImage = displayImage;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        public BufferedImage getDisplayImage() {
+            return displayImage;
+        }
+    }
+
+    private final List<File> files;
+    private final int radius;
+    private final long maxBytes;
+    private final int displayHeight;
+    private final ExecutorService decoder;
+    // 番号ごとの読み込み結果（読み込み中も含む）
+    private final Map<Integer, CompletableFuture<Entry>> entries = new HashMap<>();
+    private final Map<Integer, Long> sizes = new HashMap<>(); // 読み込み済みの画像
+    private final Map<Integer, Long> reserved = new HashMap<>(); // デコード中の画像の見積もり
+    private long usedBytes;
+    private int current;
+
+    // 統計
+    private int requests;
+    private int hits;
+    private int decodes;
+    private long decodeNanos;
+
+    public FolderPrefetcher(List<File> files, int radius, long maxBytes, int displayHeight) {
+        this.files = new ArrayList<>(files);
+        this.radius = radius;
+        this.maxBytes = maxBytes;
+        this.displayHeight = displayHeight;
+        int threads = Math.max(1, Math.min(2 * radius, Runtime.getRuntime().availableProcessors()));
+        AtomicInteger threadCount = new AtomicInteger();
+        this.decoder = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "folder-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int size() {
+        return files.size();
+    }
+
+    public File getFile(int index) {
+        return files.get(index);
+    }
+
+    // index の画像を返し、前後の画像の先読みを始める
+    // 先読みが終わっていれば完了済みの結果がすぐに返る
+    public synchronized CompletableFuture<Entry> open(int index) {
+        current = index;
+        CompletableFuture<Entry> future = entries.get(index);
+        requests++;
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            hits++;
+        }
+        if (future == null) {
+            future = submit(index);
+        }
+        // 進む方向を優先して近い順に先読みする
+        for (int d = 1; d <= radius; d++) {
+            if (index + d < files.size() && !entries.containsKey(index + d)) {
+                submit(index + d);
+            }
+            if (index - d >= 0 && !entries.containsKey(index - d)) {
+                submit(index - d);
+            }
+        }
+        evict();
+        return future;
+    }
+
+    public void shutdown() {
+        decoder.shutdownNow();
+        synchronized (this) {
+            entries.clear();
+            sizes.clear();
+            reserved.clear();
+            usedBytes = 0;
+        }
+    }
+
+    private CompletableFuture<Entry> submit(int index) {
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        entries.put(index, future);
+        decoder.execute(() -> decode(index, future));
+        return future;
+    }
+
+    private void decode(int index, CompletableFuture<Entry> future) {
+        if (!isWanted(index)) {
+            // 待っている間に別の場所へ移動した
+            drop(index, future);
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            // ImageSource はヘッダーを読むだけ（キャッシュにあればマップするだけ）なので、画素を持つ前に大きさを予約できる
+            ImageSource source = new ImageSource(files.get(index));
+            if (!reserve(index, future, estimateBytes(source))) {
+                drop(index, future);
+                return;
+            }
+            BufferedImage decoded = source.readAll(new ImageSource.ProgressListener() {
+                public void progress(float percentage) {
+                }
+
+                public boolean isCancelled() {
+                    return !isWanted(index);
+                }
+            });
+            if (decoded == null) {
+                release(index);
+                drop(index, future);
+                return;
+            }
+            BufferedImage image = source.isCached() ? decoded : RasterOps.toIntRGB(decoded);
+            BufferedImage displayImage = Downscaler.scaleToHeight(image, displayHeight);
+            long elapsed = System.nanoTime() - start;
+            synchronized (this) {
+                release(index);
+                decodes++;
+                decodeNanos += elapsed;
+                if (entries.get(index) == future) {
+                    long size = sizeOf(image) + sizeOf(displayImage);
+                    sizes.put(index, size);
+                    usedBytes += size;
+                }
+            }
+            future.complete(new Entry(files.get(index), image, displayImage));
+            synchronized (this) {
+                evict();
+            }
+        } catch (IOException | RuntimeException ex) {
+            synchronized (this) {
+                release(index);
+                // 失敗した画像は次に開いたときに読み直す
+                if (entries.get(index) == future) {
+                    entries.remove(index);
+                }
+            }
+            future.completeExceptionally(ex);
+        }
+    }
+
+    // デコード中に同時に持つ画素（デコード結果と TYPE_INT_RGB への変換結果）と表示用画像の大きさ
+    private long estimateBytes(ImageSource source) {
+        long pixels = (long) source.getWidth() * source.getHeight();
+        long displayWidth = Math.max(1, (long) source.getWidth() * displayHeight / Math.max(1, source.getHeight()));
+        return pixels * 4 * 2 + displayWidth * displayHeight * 4;
+    }
+
+    // 上限内に収まるよう、この画像より遠い読み込み済みの画像を追い出してから予約する
+    private synchronized boolean reserve(int index, CompletableFuture<Entry> future, long bytes) {
+        if (entries.get(index) != future) {
+            return false;
+        }
+        makeRoom(bytes, Math.abs(index - current));
+        if (index != current && usedBytes + bytes > maxBytes) {
+            return false;
+        }
+        reserved.put(index, bytes);
+        usedBytes += bytes;
+        return true;
+    }
+
+    private synchronized void release(int index) {
+        Long bytes = reserved.remove(index);
+        if (bytes != null) {
+            usedBytes -= bytes;
+        }
+    }
+
+    private synchronized boolean isWanted(int index) {
+        return Math.abs(index - current) <= radius;
+    }
+
+    private synchronized void drop(int index, CompletableFuture<Entry> future) {
+        if (entries.get(index) == future) {
+            entries.remove(index);
+        }
+        future.completeExceptionally(new CancellationException("Skipped " + files.get(index)));
+    }
+
+    // 先読み範囲の外にある画像から、表示中の画像から遠い順に追い出す
+    private void evict() {
+        for (Iterator<Map.Entry<Integer, CompletableFuture<Entry>>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, CompletableFuture<Entry>> e = it.next();
+            if (Math.abs(e.getKey() - current) > radius && e.getValue().isDone()) {
+                removeSize(e.getKey());
+                it.remove();
+            }
+        }
+        makeRoom(0, 0);
+    }
+
+    // 使用量に bytes を加えても上限に収まるまで、表示中の画像から minDistance より遠い
+    // 読み込み済みの画像を遠い順に追い出す
+    private void makeRoom(long bytes, int minDistance) {
+        while (usedBytes + bytes > maxBytes) {
+            int farthest = -1;
+            for (Map.Entry<Integer, CompletableFuture<Entry>> e : entries.entrySet()) {
+                int index = e.getKey();
+                if (Math.abs(index - current) > minDistance && sizes.containsKey(index)
+                        && (farthest < 0 || Math.abs(index - current) > Math.abs(farthest - current))) {
+                    farthest = index;
+                }
+            }
+            if (farthest < 0) {
+                break;
+            }
+            removeSize(farthest);
+            entries.remove(farthest);
+        }
+    }
+
+    private void removeSize(int index) {
+        Long size = sizes.remove(index);
+        if (size != null) {
+            usedBytes -= size;
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    // 開いたときにすでに先読みが終わっていた割合
+    public synchronized double getHitRate() {
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    // 1枚あたりの平均デコード・縮小時間(ms)
+    public synchronized double getAverageDecodeMillis() {
+        return decodes == 0 ? 0 : decodeNanos / 1e6 / decodes;
+    }
+}
@@ -0,0 +1,142 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// フレーム間隔の集計（FrameTimer）に加えて、更新処理の時間とその間に発生したGC停止時間を集計する
+public class FrameStats {
+
+    // GC停止の累計（プロセス全体で1つ）
+    private static final AtomicLong gcPauses = new AtomicLong();
+    private static final AtomicLong gcPauseMillis = new AtomicLong();
+    private static boolean gcListenerInstalled;
+
+    private final FrameTimer intervals = new FrameTimer("FrameStats");
+    private long totalUpdateNanos;
+    private long gcPausesAtReset;
+    private long gcPauseMillisAtReset;
+
+    // フレームごとの記録（CSV出力用。recordSamples のときだけ保持する）
+    private final boolean recordSamples;
+    private long[] samples = new long[0];
+    private long lastGcPauseMillis;
+
+    public FrameStats(boolean recordSamples) {
+        this.recordSamples = recordSamples;
+        installGcListener();
+        reset();
+    }
+
+    // GC終了の通知から停止時間を集計する（並行GCのサイクルは停止ではないので除く）
+    private static synchronized void installGcListener() {
+        if (gcListenerInstalled) {
+            return;
+        }
+        gcListenerInstalled = true;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(bean instanceof NotificationEmitter)) {
+                continue;
+            }
+            ((NotificationEmitter) bean).addNotificationListener((notification, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    return;
+                }
+                GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                if (info.getGcName().contains("Concurrent") || info.getGcName().contains("Cycles")) {
+                    return;
+                }
+                gcPauses.incrementAndGet();
+                gcPauseMillis.addAndGet(info.getGcInfo().getDuration());
+            }, null, null);
+        }
+    }
+
+    public void reset() {
+        intervals.reset();
+        totalUpdateNanos = 0;
+        gcPausesAtReset = gcPauses.get();
+        gcPauseMillisAtReset = gcPauseMillis.get();
+        lastGcPauseMillis = gcPauseMillisAtReset;
+    }
+
+    // intervalNanos: 前のフレームからの間隔, updateNanos: そのフレームの更新処理時間
+    public void record(long intervalNanos, long updateNanos) {
+        int frames = intervals.getFrames();
+        intervals.record(intervalNanos);
+        totalUpdateNanos += updateNanos;
+
+        if (recordSamples) {
+            long gcMillis = gcPauseMillis.get();
+            if (frames * 3 + 3 > samples.length) {
+                samples = Arrays.copyOf(samples, Math.max(3 * 1024, samples.length * 2));
+            }
+            samples[frames * 3] = intervalNanos;
+            samples[frames * 3 + 1] = updateNanos;
+            samples[frames * 3 + 2] = gcMillis - lastGcPauseMillis;
+            lastGcPauseMillis = gcMillis;
+        }
+    }
+
+    public int getFrames() {
+        return intervals.getFrames();
+    }
+
+    public double getAverageMillis() {
+        return intervals.getAverageMillis();
+    }
+
+    public double getAverageUpdateMillis() {
+        int frames = intervals.getFrames();
+        return frames == 0 ? 0 : totalUpdateNanos / 1e6 / frames;
+    }
+
+    public double getMaxMillis() {
+        return intervals.getMaxMillis();
+    }
+
+    public double getFps() {
+        long totalNanos = intervals.getTotalNanos();
+        return totalNanos == 0 ? 0 : intervals.getFrames() * 1e9 / totalNanos;
+    }
+
+    public double percentile(double p) {
+        return intervals.percentile(p);
+    }
+
+    public int[] getHistogram() {
+        return intervals.getHistogram();
+    }
+
+    public long getGcPauses() {
+        return gcPauses.get() - gcPausesAtReset;
+    }
+
+    public long getGcPauseMillis() {
+        return gcPauseMillis.get() - gcPauseMillisAtReset;
+    }
+
+    public String summary() {
+        return String.format("frames=%d  fps=%.1f  p50=%.2f ms  p99=%.2f ms  max=%.2f ms  update=%.2f ms  GC %d pauses / %d ms",
+            getFrames(), getFps(), percentile(50), percentile(99), getMaxMillis(), getAverageUpdateMillis(),
+            getGcPauses(), getGcPauseMillis());
+    }
+
+    // フレームごとの記録をCSVに書き出す
+    public void writeCsv(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            out.println("frame,interval_ms,update_ms,gc_pause_ms");
+            for (int i = 0; i < getFrames() && recordSamples; i++) {
+                out.printf("%d,%.3f,%.3f,%d%n", i, samples[i * 3] / 1e6, samples[i * 3 + 1] / 1e6, samples[i * 3 + 2]);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.Arrays;
+
+// フレームの所要時間（または間隔）を集計する簡易カウンタ
+// 平均・最大と、0.1ms刻みのヒストグラムから求めた百分位数を返す
+// begin / end で paintComponent を計測したときは、-DframeTimer=true を指定したときだけ
+// 一定フレームごとに標準出力へ集計を出す
+public class FrameTimer {
+    public static final double BUCKET_MILLIS = 0.1;
+    private static final int BUCKETS = 1000; // 0〜100ms。超えた分は最後のバケットに入れる
+    private static final boolean ENABLED = Boolean.getBoolean("frameTimer");
+    private static final int REPORT_INTERVAL = 60;
+
+    private final String name;
+    private final int[] histogram = new int[BUCKETS];
+    private long frameStart;
+    private long totalNanos;
+    private long maxNanos;
+    private int frames;
+
+    public FrameTimer(String name) {
+        this.name = name;
+    }
+
+    public void begin() {
+        if (ENABLED) {
+            frameStart = System.nanoTime();
+        }
+    }
+
+    public void end() {
+        if (!ENABLED) {
+            return;
+        }
+        record(System.nanoTime() - frameStart);
+        if (frames == REPORT_INTERVAL) {
+            System.out.printf("[%s] %d frames: avg %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                name, frames, getAverageMillis(), percentile(99), getMaxMillis());
+            reset();
+        }
+    }
+
+    // 1フレーム分の時間を加える
+    public void record(long nanos) {
+        int bucket = (int) Math.min(BUCKETS - 1, nanos / (long) (BUCKET_MILLIS * 1_000_000));
+        histogram[bucket]++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        frames++;
+    }
+
+    public void reset() {
+        Arrays.fill(histogram, 0);
+        totalNanos = 0;
+        maxNanos = 0;
+        frames = 0;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public double getAverageMillis() {
+        return frames == 0 ? 0 : totalNanos / 1e6 / frames;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    // ヒストグラムから求めた百分位数（バケットの上端, ms）
+    public double percentile(double p) {
+        if (frames == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(frames * p / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= threshold) {
+                return Math.min((i + 1) * BUCKET_MILLIS, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public int[] getHistogram() {
+        return histogram.clone();
+    }
+}
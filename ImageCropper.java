@@ -2,46 +2,81 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
 
+// マウスホイールで拡大・縮小、右ボタン（または中ボタン）のドラッグで表示位置を移動できる
 public class ImageCropper extends JFrame {
-    private BufferedImage originalImage;
+    // 元画像1画素を最大32画面画素まで拡大する
+    private static final double MAX_SCALE = 32;
+    private static final double WHEEL_ZOOM = 1.25;
+    private static final long ZOOM_CACHE_BYTES = 256L * 1024 * 1024;
+
+    private ImageSource imageSource; // 元画像（必要な領域だけデコードする）
+    private BufferedImage previewImage; // 画面サイズ程度に間引いた表示用画像
+    private ImagePyramid pyramid; // 描画用の多重解像度タイル
+    private DisplayImage fittedImage; // パネルに合わせて描画済みの画像（リサイズ・読み込み時のみ再生成）
+    private ZoomTileCache zoomTiles; // 拡大時に表示範囲だけをデコードしたタイル
+    private boolean fitToPanel = true; // 拡大していなければパネルに合わせて全体を表示する
+    private double viewScale; // 元画像1画素あたりの画面画素数
+    private double originX; // 元画像の左上の画面座標
+    private double originY;
+    private Point panStart;
     private BufferedImage croppedImage;
+    private SwingWorker<BufferedImage, Void> cropWorker; // 選択範囲の読み込み中の処理（なければnull）
+    private SwingWorker<BufferedImage, Void> loadWorker; // 画像を開いている途中の処理（なければnull）
+    private CropRecord pendingRecord; // 起動時に復元した、まだ開いていない最後のクロップ（なければnull）
+    private DisplayImage croppedDisplay; // プレビューに合わせて描画済みのクロップ画像
+    private BufferedImage croppedDisplayFor; // croppedDisplay の元の画像
     private JPanel mainPanel;
     private JPanel previewPanel;
     private Point startPoint;
-    private Rectangle cropRect;
+    private Rectangle cropRect; // ドラッグ中の選択範囲（画面の座標）
+    private Rectangle cropSource; // 確定した選択範囲（元画像の座標）
     private boolean drawing = false;
     private Rectangle imageRect; // 実際の画像表示領域を保持
+    private final FrameTimer frameTimer = new FrameTimer("ImageCropper");
+    private final EncodeQueue encodeQueue = new EncodeQueue(2); // 保存はバックグラウンドで行う
+    private EncodeOptions encodeOptions = EncodeOptions.defaults();
+    // 確定したクロップの履歴（元に戻す・やり直し用。次回の起動時に最後のクロップを復元する）
+    private final CropJournal journal = CropJournal.open("ImageCropper");
 
     public ImageCropper() {
+        // 保存済みの画像の索引は大きくなることがあるので、保存するまでにバックグラウンドで読んでおく
+        CropHashIndex.preload();
         setTitle("Image Cropper");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         initializeUI();
         setSize(1200, 800);
         setLocationRelativeTo(null);
+        // 前回の最後のクロップは範囲などを表示するだけで、クリックされるまで（または元に戻す・やり直すまで）デコードしない
+        pendingRecord = journal.last();
     }
 
     private void initializeUI() {
         mainPanel = new JPanel() {
             @Override
             protected void paintComponent(Graphics g) {
+                frameTimer.begin();
                 super.paintComponent(g);
-                if (originalImage != null) {
+                if (previewImage != null) {
                     // 画像を描画し、表示領域を保存
-                    imageRect = drawFitImage(g);
+                    imageRect = fitToPanel ? drawFitImage(g) : drawZoomedImage(g);
                     
                     // 選択範囲を描画
-                    if (cropRect != null) {
+                    Rectangle selection = selectionOnScreen();
+                    if (selection != null) {
                         Graphics2D g2d = (Graphics2D) g;
                         g2d.setColor(new Color(255, 255, 255, 100));
-                        g2d.fill(cropRect);
+                        g2d.fill(selection);
                         g2d.setColor(Color.WHITE);
-                        g2d.draw(cropRect);
+                        g2d.draw(selection);
                     }
                 }
+                frameTimer.end();
             }
         };
 
@@ -50,7 +85,6 @@ public class ImageCropper extends JFrame {
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
                 if (croppedImage != null) {
-                    Graphics2D g2d = (Graphics2D) g;
                     int w = getWidth();
                     int h = getHeight();
                     double scale = Math.min((double) w / croppedImage.getWidth(),
@@ -59,30 +93,71 @@ public class ImageCropper extends JFrame {
                     int scaledH = (int) (croppedImage.getHeight() * scale);
                     int x = (w - scaledW) / 2;
                     int y = (h - scaledH) / 2;
-                    g2d.drawImage(croppedImage, x, y, scaledW, scaledH, null);
+                    if (croppedDisplayFor != croppedImage) {
+                        // クロップし直したときだけ作り直す（縮小は表示サイズが変わったときだけ行う）
+                        BufferedImage image = croppedImage;
+                        croppedDisplay = new DisplayImage(image.getColorModel().getTransparency(),
+                            (g2d, dw, dh) -> g2d.drawImage(image, 0, 0, dw, dh, null));
+                        croppedDisplayFor = image;
+                    }
+                    croppedDisplay.setSize(scaledW, scaledH);
+                    croppedDisplay.paintIcon(this, g, x, y);
+                } else if (pendingRecord != null) {
+                    Rectangle r = pendingRecord.getRect();
+                    g.setColor(Color.GRAY);
+                    g.drawString("Last crop: " + pendingRecord.getSource().getName(), 10, 20);
+                    g.drawString(r.width + " x " + r.height + " at (" + r.x + ", " + r.y + ")", 10, 38);
+                    g.drawString("Click to open", 10, 56);
                 }
             }
         };
+        previewPanel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (pendingRecord != null) {
+                    showRecord(pendingRecord);
+                }
+            }
+        });
 
         MouseAdapter mouseAdapter = new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
+                if (!SwingUtilities.isLeftMouseButton(e)) {
+                    // 拡大中は左ボタン以外のドラッグで表示位置を移動する
+                    if (!fitToPanel) {
+                        panStart = e.getPoint();
+                    }
+                    return;
+                }
                 // 画像の表示領域内でのみ処理を行う
-                if (imageRect != null && imageRect.contains(e.getPoint())) {
+                Rectangle visible = visibleImageRect();
+                if (visible != null && visible.contains(e.getPoint())) {
+                    Rectangle oldRect = selectionOnScreen();
                     startPoint = e.getPoint();
                     cropRect = null;
+                    cropSource = null;
                     drawing = true;
-                    mainPanel.repaint();
+                    repaintSelection(oldRect, null);
                 }
             }
 
             @Override
             public void mouseDragged(MouseEvent e) {
-                if (drawing && imageRect != null) {
+                if (panStart != null) {
+                    originX += e.getX() - panStart.x;
+                    originY += e.getY() - panStart.y;
+                    panStart = e.getPoint();
+                    clampView();
+                    mainPanel.repaint();
+                    return;
+                }
+                Rectangle visible = visibleImageRect();
+                if (drawing && visible != null) {
                     // マウス座標を画像表示領域内に制限
                     Point p = new Point(
-                        Math.max(imageRect.x, Math.min(e.getX(), imageRect.x + imageRect.width)),
-                        Math.max(imageRect.y, Math.min(e.getY(), imageRect.y + imageRect.height))
+                        Math.max(visible.x, Math.min(e.getX(), visible.x + visible.width)),
+                        Math.max(visible.y, Math.min(e.getY(), visible.y + visible.height))
                     );
                     
                     int x = Math.min(startPoint.x, p.x);
@@ -90,58 +165,90 @@ public class ImageCropper extends JFrame {
                     int width = Math.abs(p.x - startPoint.x);
                     int height = Math.abs(p.y - startPoint.y);
                     
+                    Rectangle oldRect = cropRect;
                     cropRect = new Rectangle(x, y, width, height);
-                    mainPanel.repaint();
+                    repaintSelection(oldRect, cropRect);
                 }
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
+                if (panStart != null) {
+                    panStart = null;
+                    return;
+                }
                 if (drawing && cropRect != null && imageRect != null) {
-                    // 画像表示領域内での相対座標に変換
-                    double scaleX = (double) originalImage.getWidth() / imageRect.width;
-                    double scaleY = (double) originalImage.getHeight() / imageRect.height;
-                    
-                    // 選択範囲の座標を画像表示領域からの相対位置に変換
-                    int relativeX = cropRect.x - imageRect.x;
-                    int relativeY = cropRect.y - imageRect.y;
-                    
-                    // 元画像での座標に変換
-                    int x = (int) (relativeX * scaleX);
-                    int y = (int) (relativeY * scaleY);
-                    int width = (int) (cropRect.width * scaleX);
-                    int height = (int) (cropRect.height * scaleY);
-                    
-                    // 範囲チェック
-                    x = Math.max(0, Math.min(x, originalImage.getWidth() - 1));
-                    y = Math.max(0, Math.min(y, originalImage.getHeight() - 1));
-                    width = Math.min(width, originalImage.getWidth() - x);
-                    height = Math.min(height, originalImage.getHeight() - y);
+                    // 元画像での座標に変換（倍率に関係なく画素の境界に合わせる）
+                    Rectangle sourceRect = CropGeometry.toSource(cropRect, originX, originY, viewScale,
+                                                                 imageSource.getWidth(), imageSource.getHeight());
+                    Rectangle oldRect = cropRect;
+                    drawing = false;
+                    cropRect = null;
+                    cropSource = sourceRect;
+                    repaintSelection(oldRect, selectionOnScreen());
                     
-                    // 最小サイズチェック
-                    if (width > 0 && height > 0) {
-                        croppedImage = originalImage.getSubimage(x, y, width, height);
-                        previewPanel.repaint();
+                    if (sourceRect != null) {
+                        // 選択された領域だけをファイルからデコードする
+                        readCrop(sourceRect, true);
                     }
                 }
                 drawing = false;
             }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (previewImage != null && !drawing) {
+                    zoomAt(e.getPoint(), Math.pow(WHEEL_ZOOM, -e.getPreciseWheelRotation()));
+                }
+            }
         };
 
         mainPanel.addMouseListener(mouseAdapter);
         mainPanel.addMouseMotionListener(mouseAdapter);
+        mainPanel.addMouseWheelListener(mouseAdapter);
 
         JMenuBar menuBar = new JMenuBar();
         JMenu fileMenu = new JMenu("File");
         JMenuItem openItem = new JMenuItem("Open");
         JMenuItem saveItem = new JMenuItem("Save Cropped");
+        JMenuItem optionsItem = new JMenuItem("Save Options...");
 
         openItem.addActionListener(e -> loadImage());
         saveItem.addActionListener(e -> saveCroppedImage());
+        optionsItem.addActionListener(e -> {
+            EncodeOptions options = EncodeOptions.showDialog(this, encodeOptions, Locale.ENGLISH);
+            if (options != null) {
+                encodeOptions = options;
+            }
+        });
 
         fileMenu.add(openItem);
         fileMenu.add(saveItem);
+        fileMenu.add(optionsItem);
         menuBar.add(fileMenu);
+
+        JMenu cropMenu = new JMenu("Crop");
+        JMenuItem autoCropItem = new JMenuItem("Auto Crop Borders");
+        autoCropItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_A,
+            InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
+        autoCropItem.addActionListener(e -> autoCrop());
+        cropMenu.add(autoCropItem);
+        menuBar.add(cropMenu);
+
+        JMenu editMenu = new JMenu("Edit");
+        JMenuItem undoItem = new JMenuItem("Undo Crop");
+        JMenuItem redoItem = new JMenuItem("Redo Crop");
+        undoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+        redoItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        undoItem.addActionListener(e -> {
+            if (journal.undo() != null) {
+                showRecord(journal.last());
+            }
+        });
+        redoItem.addActionListener(e -> showRecord(journal.redo()));
+        editMenu.add(undoItem);
+        editMenu.add(redoItem);
+        menuBar.add(editMenu);
         setJMenuBar(menuBar);
 
         setLayout(new BorderLayout());
@@ -150,64 +257,392 @@ public class ImageCropper extends JFrame {
         add(splitPane, BorderLayout.CENTER);
     }
 
+    // 選択範囲の変更前後を合わせた領域だけを再描画する
+    private void repaintSelection(Rectangle oldRect, Rectangle newRect) {
+        Rectangle dirty = oldRect;
+        if (newRect != null) {
+            dirty = dirty == null ? newRect : dirty.union(newRect);
+        }
+        if (dirty != null) {
+            // 枠線は右端・下端に1ピクセルはみ出す
+            mainPanel.repaint(dirty.x, dirty.y, dirty.width + 1, dirty.height + 1);
+        }
+    }
+
+    // 画面上の選択範囲（なければnull）
+    private Rectangle selectionOnScreen() {
+        if (drawing) {
+            return cropRect;
+        }
+        if (cropSource != null) {
+            return CropGeometry.toScreen(cropSource, originX, originY, viewScale);
+        }
+        return null;
+    }
+
+    // 画像の表示領域のうちパネル内に見えている部分
+    private Rectangle visibleImageRect() {
+        if (imageRect == null) {
+            return null;
+        }
+        return imageRect.intersection(new Rectangle(0, 0, mainPanel.getWidth(), mainPanel.getHeight()));
+    }
+
+    private double fitScale() {
+        return Math.min((double) mainPanel.getWidth() / imageSource.getWidth(),
+                        (double) mainPanel.getHeight() / imageSource.getHeight());
+    }
+
+    // point の下の画素が動かないように倍率を factor 倍する
+    private void zoomAt(Point point, double factor) {
+        double fit = fitScale();
+        double scale = fitToPanel ? fit : viewScale;
+        double newScale = Math.max(fit, Math.min(MAX_SCALE, scale * factor));
+        if (newScale <= fit) {
+            fitToPanel = true;
+        } else {
+            if (fitToPanel) {
+                viewScale = fit;
+            }
+            originX = point.x - (point.x - originX) * newScale / viewScale;
+            originY = point.y - (point.y - originY) * newScale / viewScale;
+            viewScale = newScale;
+            fitToPanel = false;
+            clampView();
+        }
+        mainPanel.repaint();
+    }
+
+    // パネルより小さい向きは中央に置き、大きい向きはパネルの端に隙間ができないようにする
+    private void clampView() {
+        originX = clampOrigin(originX, imageSource.getWidth() * viewScale, mainPanel.getWidth());
+        originY = clampOrigin(originY, imageSource.getHeight() * viewScale, mainPanel.getHeight());
+    }
+
+    private static double clampOrigin(double origin, double size, int panelSize) {
+        if (size <= panelSize) {
+            return (panelSize - size) / 2;
+        }
+        return Math.max(panelSize - size, Math.min(0, origin));
+    }
+
+    // 拡大表示。表示用画像の解像度を超える倍率では、表示範囲の元画像をタイル単位で読み込んで描く
+    private Rectangle drawZoomedImage(Graphics g) {
+        Graphics2D g2d = (Graphics2D) g;
+        clampView();
+        Rectangle dest = CropGeometry.toScreen(
+            new Rectangle(0, 0, imageSource.getWidth(), imageSource.getHeight()), originX, originY, viewScale);
+        Rectangle visible = dest.intersection(new Rectangle(0, 0, mainPanel.getWidth(), mainPanel.getHeight()));
+        if (visible.isEmpty()) {
+            return dest;
+        }
+        if (viewScale <= (double) previewImage.getWidth() / imageSource.getWidth()) {
+            // 表示用画像の解像度で足りる
+            pyramid.draw(g2d, dest);
+            return dest;
+        }
+        List<Rectangle> missing = zoomTiles.draw(g2d, originX, originY, viewScale, visible, mainPanel::repaint);
+        // 読み込み中のタイルの部分は表示用画像を引き伸ばして仮に表示する
+        Shape clip = g2d.getClip();
+        for (Rectangle rect : missing) {
+            g2d.setClip(clip);
+            g2d.clipRect(rect.x, rect.y, rect.width, rect.height);
+            pyramid.draw(g2d, dest);
+        }
+        g2d.setClip(clip);
+        return dest;
+    }
+
     private Rectangle drawFitImage(Graphics g) {
-        if (originalImage != null) {
+        if (previewImage != null) {
             Graphics2D g2d = (Graphics2D) g;
             int panelWidth = mainPanel.getWidth();
             int panelHeight = mainPanel.getHeight();
             
-            double scale = Math.min((double) panelWidth / originalImage.getWidth(),
-                                 (double) panelHeight / originalImage.getHeight());
+            double scale = Math.min((double) panelWidth / imageSource.getWidth(),
+                                 (double) panelHeight / imageSource.getHeight());
             
-            int scaledWidth = (int) (originalImage.getWidth() * scale);
-            int scaledHeight = (int) (originalImage.getHeight() * scale);
+            int scaledWidth = (int) (imageSource.getWidth() * scale);
+            int scaledHeight = (int) (imageSource.getHeight() * scale);
             
             int x = (panelWidth - scaledWidth) / 2;
             int y = (panelHeight - scaledHeight) / 2;
+            viewScale = scale;
+            originX = x;
+            originY = y;
             
-            g2d.drawImage(originalImage, x, y, scaledWidth, scaledHeight, null);
+            Rectangle dest = new Rectangle(x, y, scaledWidth, scaledHeight);
+            if (scaledWidth <= 0 || scaledHeight <= 0) {
+                return dest;
+            }
+            fittedImage.setSize(scaledWidth, scaledHeight);
+            // クリップ領域だけが転送される
+            fittedImage.paintIcon(mainPanel, g2d, x, y);
             
             // 実際の画像表示領域を返す
-            return new Rectangle(x, y, scaledWidth, scaledHeight);
+            return dest;
         }
         return null;
     }
 
     private void loadImage() {
         JFileChooser fileChooser = new JFileChooser();
-        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            try {
-                File file = fileChooser.getSelectedFile();
-                originalImage = ImageIO.read(file);
-                cropRect = null;
-                croppedImage = null;
-                mainPanel.repaint();
-                previewPanel.repaint();
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error loading image: " + ex.getMessage(),
-                                          "Error", JOptionPane.ERROR_MESSAGE);
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = fileChooser.getSelectedFile();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        // 全体は画面サイズ程度に間引いて読み込み、原寸はクロップ時に必要な領域だけ読む
+        // 間引いてもファイル全体をデコードするため、大きな画像では時間がかかる。EDT では読まない
+        loadWorker = new SwingWorker<BufferedImage, Void>() {
+            private ImageSource source;
+
+            @Override
+            protected BufferedImage doInBackground() throws Exception {
+                source = new ImageSource(file);
+                return readPreview(source);
+            }
+
+            @Override
+            protected void done() {
+                if (loadWorker != this) {
+                    // 読み込み中に別の画像を選んだ
+                    return;
+                }
+                loadWorker = null;
+                setCursor(Cursor.getDefaultCursor());
+                try {
+                    setImage(source, get());
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(ImageCropper.this, "Error loading image: " + cause.getMessage(),
+                                              "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        loadWorker.execute();
+    }
+
+    // 余白を除いた範囲を自動で選択してクロップする
+    // 表示用画像でおおよその範囲を求め、その周辺だけを原寸で読み直して境界を決める
+    private void autoCrop() {
+        if (imageSource == null) {
+            return;
+        }
+        ImageSource source = imageSource;
+        BufferedImage preview = previewImage;
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<BufferedImage, Void>() {
+            private Rectangle content;
+            private long hash;
+
+            @Override
+            protected BufferedImage doInBackground() throws Exception {
+                int background = AutoCrop.backgroundColor(preview);
+                Rectangle rough = AutoCrop.findContent(preview, background, AutoCrop.DEFAULT_TOLERANCE);
+                if (rough == null) {
+                    return null;
+                }
+                // 間引きで見落とした分を含むよう、表示用画像の1画素分広げて原寸で読む
+                double sx = (double) source.getWidth() / preview.getWidth();
+                double sy = (double) source.getHeight() / preview.getHeight();
+                int x0 = (int) Math.floor((rough.x - 1) * sx);
+                int y0 = (int) Math.floor((rough.y - 1) * sy);
+                int x1 = (int) Math.ceil((rough.x + rough.width + 1) * sx);
+                int y1 = (int) Math.ceil((rough.y + rough.height + 1) * sy);
+                Rectangle region = new Rectangle(x0, y0, x1 - x0, y1 - y0)
+                    .intersection(new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+                BufferedImage full = source.readRegion(region);
+                Rectangle fine = AutoCrop.findContent(full, background, AutoCrop.DEFAULT_TOLERANCE);
+                if (fine == null) {
+                    content = region;
+                    hash = PerceptualHash.of(source, content);
+                    return full;
+                }
+                content = new Rectangle(region.x + fine.x, region.y + fine.y, fine.width, fine.height);
+                hash = PerceptualHash.of(source, content);
+                return RasterOps.crop(full, fine);
+            }
+
+            @Override
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                if (imageSource != source) {
+                    // 完了前に別の画像を開いた
+                    return;
+                }
+                try {
+                    BufferedImage image = get();
+                    if (image == null) {
+                        JOptionPane.showMessageDialog(ImageCropper.this, "No content found",
+                                                  "Auto Crop", JOptionPane.INFORMATION_MESSAGE);
+                        return;
+                    }
+                    cropSource = content;
+                    croppedImage = image;
+                    recordCrop(hash);
+                    mainPanel.repaint();
+                    previewPanel.repaint();
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(ImageCropper.this, "Error cropping image: " + cause.getMessage(),
+                                              "Error", JOptionPane.ERROR_MESSAGE);
+                }
             }
+        }.execute();
+    }
+
+    private static BufferedImage readPreview(ImageSource source) throws IOException {
+        Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+        return source.readPreview(screen.width, screen.height);
+    }
+
+    private void setImage(ImageSource source, BufferedImage preview) {
+        if (zoomTiles != null) {
+            zoomTiles.shutdown();
         }
+        imageSource = source;
+        pendingRecord = null;
+        previewImage = preview;
+        pyramid = new ImagePyramid(previewImage);
+        zoomTiles = new ZoomTileCache(source, ZOOM_CACHE_BYTES);
+        ImagePyramid fitted = pyramid;
+        fittedImage = new DisplayImage(previewImage.getColorModel().getTransparency(),
+            (g2d, w, h) -> fitted.draw(g2d, new Rectangle(0, 0, w, h)));
+        fitToPanel = true;
+        cropRect = null;
+        cropSource = null;
+        croppedImage = null;
+        mainPanel.repaint();
+        previewPanel.repaint();
+    }
+
+    // 確定した選択範囲 sourceRect を原寸でバックグラウンドで読み込み、プレビューに表示する
+    // 大きな画像では数百msかかるため EDT では読まない。完了前に選択し直したときは結果を捨てる
+    private void readCrop(Rectangle sourceRect, boolean record) {
+        ImageSource source = imageSource;
+        croppedImage = null;
+        previewPanel.repaint();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        cropWorker = new SwingWorker<BufferedImage, Void>() {
+            private long hash;
+
+            @Override
+            protected BufferedImage doInBackground() throws Exception {
+                if (record) {
+                    hash = PerceptualHash.of(source, sourceRect);
+                }
+                return source.readRegion(sourceRect);
+            }
+
+            @Override
+            protected void done() {
+                if (cropWorker != this) {
+                    // 後から開始された読み込みに置き換えられている
+                    return;
+                }
+                cropWorker = null;
+                setCursor(Cursor.getDefaultCursor());
+                if (imageSource != source || !sourceRect.equals(cropSource)) {
+                    return;
+                }
+                try {
+                    croppedImage = get();
+                    if (record) {
+                        recordCrop(hash);
+                    }
+                    previewPanel.repaint();
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(ImageCropper.this, "Error cropping image: " + cause.getMessage(),
+                                              "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        cropWorker.execute();
+    }
+
+    // 確定したクロップを履歴に記録する（ハッシュは原寸の画像から求めると重いので、読み込み時にバックグラウンドで求めておく）
+    private void recordCrop(long hash) {
+        journal.add(new CropRecord(imageSource.getFile(), cropSource, hash));
+    }
+
+    // 履歴の1件を表示する（null なら選択を解除する）
+    // 別の画像のクロップなら、その画像をバックグラウンドで開いてから表示する
+    private void showRecord(CropRecord record) {
+        pendingRecord = null;
+        if (record == null) {
+            Rectangle oldRect = selectionOnScreen();
+            cropSource = null;
+            croppedImage = null;
+            repaintSelection(oldRect, null);
+            previewPanel.repaint();
+            return;
+        }
+        if (imageSource != null && imageSource.getFile().equals(record.getSource())) {
+            Rectangle oldRect = selectionOnScreen();
+            cropSource = record.getRect();
+            repaintSelection(oldRect, selectionOnScreen());
+            readCrop(cropSource, false);
+            return;
+        }
+        ImageSource current = imageSource;
+        new SwingWorker<BufferedImage[], Void>() {
+            private ImageSource source;
+
+            @Override
+            protected BufferedImage[] doInBackground() throws Exception {
+                source = new ImageSource(record.getSource());
+                return new BufferedImage[] {readPreview(source), source.readRegion(record.getRect())};
+            }
+
+            @Override
+            protected void done() {
+                if (journal.last() != record || imageSource != current) {
+                    // 読み込み中に別の履歴に移った（または別の画像を開いた）
+                    return;
+                }
+                try {
+                    BufferedImage[] images = get();
+                    setImage(source, images[0]);
+                    cropSource = record.getRect();
+                    croppedImage = images[1];
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    System.err.println("Failed to open " + record.getSource() + ": " + cause.getMessage());
+                }
+            }
+        }.execute();
     }
 
     private void saveCroppedImage() {
-        if (croppedImage != null) {
+        // 表示中のクロップは常に履歴の最後の1件なので、記録したハッシュを使う
+        CropRecord record = journal.last();
+        if (croppedImage != null && record != null && record.getRect().equals(cropSource)) {
+            // 以前のセッションも含めて同じような画像を保存済みなら確認する
+            long hash = record.getHash();
+            CropHashIndex.Match saved = CropHashIndex.findSaved(hash);
+            if (saved != null && JOptionPane.showConfirmDialog(this,
+                    "A similar image has already been saved:\n" + saved.getFile() + "\nSave anyway?",
+                    "Save Cropped", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+                return;
+            }
             JFileChooser fileChooser = new JFileChooser();
             if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-                try {
-                    File file = fileChooser.getSelectedFile();
-                    String name = file.getName();
-                    String extension = "png";
-                    if (name.lastIndexOf(".") != -1) {
-                        extension = name.substring(name.lastIndexOf(".") + 1);
+                File file = fileChooser.getSelectedFile();
+                if (file.getName().lastIndexOf(".") == -1) {
+                    file = new File(file.getAbsolutePath() + "." + encodeOptions.getFormat());
+                }
+                // 書き込みはバックグラウンドで行い、失敗したときだけ知らせる
+                BufferedImage image = croppedImage;
+                encodeQueue.submit(() -> image, file, encodeOptions).whenComplete((result, ex) -> {
+                    if (ex == null) {
+                        CropHashIndex.recordSaved(hash, result.getFile());
                     } else {
-                        file = new File(file.getAbsolutePath() + ".png");
+                        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                            "Error saving image: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
                     }
-                    ImageIO.write(croppedImage, extension, file);
-                } catch (IOException ex) {
-                    JOptionPane.showMessageDialog(this, "Error saving image: " + ex.getMessage(),
-                                              "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                });
             }
         }
     }
@@ -0,0 +1,26 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// ビューアと一括処理で共通の、読み込める画像ファイルの判定と一覧
+public class ImageFiles {
+    private ImageFiles() {
+    }
+
+    // 拡張子が jpg / jpeg / png / gif のファイルか
+    public static boolean isImage(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png") || name.endsWith(".gif");
+    }
+
+    // フォルダ内の画像ファイルを名前順に返す
+    public static List<File> list(File directory) {
+        File[] found = directory.listFiles(f -> f.isFile() && isImage(f));
+        if (found == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(found);
+        return new ArrayList<>(Arrays.asList(found));
+    }
+}
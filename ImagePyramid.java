@@ -0,0 +1,129 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+// 巨大画像を高速に描画するための多重解像度タイルピラミッド
+// レベル0が原寸、レベルが1つ上がるごとに縦横1/2に縮小する
+public class ImagePyramid {
+    public static final int TILE_SIZE = 256;
+    // 最上位レベルの長辺がこれ以下になるまで縮小する
+    private static final int MIN_LEVEL_SIZE = 256;
+
+    private final int width;
+    private final int height;
+    private final List<Level> levels = new ArrayList<>();
+
+    private static class Level {
+        final int width;
+        final int height;
+        final double scale; // 原寸に対する倍率
+        final int cols;
+        final int rows;
+        final BufferedImage[][] tiles;
+
+        Level(BufferedImage image, double scale) {
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.scale = scale;
+            this.cols = (width + TILE_SIZE - 1) / TILE_SIZE;
+            this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+            this.tiles = new BufferedImage[rows][cols];
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    int tx = c * TILE_SIZE;
+                    int ty = r * TILE_SIZE;
+                    int tw = Math.min(TILE_SIZE, width - tx);
+                    int th = Math.min(TILE_SIZE, height - ty);
+                    tiles[r][c] = image.getSubimage(tx, ty, tw, th);
+                }
+            }
+        }
+    }
+
+    public ImagePyramid(BufferedImage image) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+
+        BufferedImage current = image;
+        double scale = 1.0;
+        levels.add(new Level(current, scale));
+        while (Math.max(current.getWidth(), current.getHeight()) > MIN_LEVEL_SIZE) {
+            current = halve(current);
+            scale /= 2.0;
+            levels.add(new Level(current, scale));
+        }
+    }
+
+    private static BufferedImage halve(BufferedImage src) {
+        int w = Math.max(1, src.getWidth() / 2);
+        int h = Math.max(1, src.getHeight() / 2);
+        int type = src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage dst = new BufferedImage(w, h, type);
+        Graphics2D g2d = dst.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(src, 0, 0, w, h, null);
+        g2d.dispose();
+        return dst;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    // 表示倍率以上の解像度を持つ最も小さいレベルを選ぶ
+    private Level selectLevel(double displayScale) {
+        Level selected = levels.get(0);
+        for (Level level : levels) {
+            if (level.scale >= displayScale) {
+                selected = level;
+            } else {
+                break;
+            }
+        }
+        return selected;
+    }
+
+    // 原画像全体をdestに収まるよう描画する。クリップ領域外のタイルは描画しない
+    public void draw(Graphics2D g2d, Rectangle dest) {
+        double displayScale = (double) dest.width / width;
+        Level level = selectLevel(displayScale);
+        double sx = (double) dest.width / level.width;
+        double sy = (double) dest.height / level.height;
+
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = dest;
+        }
+        Rectangle visible = clip.intersection(dest);
+        if (visible.isEmpty()) {
+            return;
+        }
+
+        // 表示領域に掛かるタイルの範囲を求める
+        int c0 = Math.max(0, (int) ((visible.x - dest.x) / sx) / TILE_SIZE);
+        int r0 = Math.max(0, (int) ((visible.y - dest.y) / sy) / TILE_SIZE);
+        int c1 = Math.min(level.cols - 1, (int) ((visible.x + visible.width - dest.x) / sx) / TILE_SIZE);
+        int r1 = Math.min(level.rows - 1, (int) ((visible.y + visible.height - dest.y) / sy) / TILE_SIZE);
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                BufferedImage tile = level.tiles[r][c];
+                // 隣接タイルとの間に隙間が出ないよう端点から座標を計算する
+                int x0 = dest.x + (int) Math.floor(c * TILE_SIZE * sx);
+                int y0 = dest.y + (int) Math.floor(r * TILE_SIZE * sy);
+                int x1 = dest.x + (int) Math.floor((c * TILE_SIZE + tile.getWidth()) * sx);
+                int y1 = dest.y + (int) Math.floor((r * TILE_SIZE + tile.getHeight()) * sy);
+                g2d.drawImage(tile, x0, y0, x1 - x0, y1 - y0, null);
+            }
+        }
+    }
+}
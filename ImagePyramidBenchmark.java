@@ -0,0 +1,59 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// 画像サイズごとの再描画時間を、原寸画像の直接縮小描画とタイルピラミッド描画で比較する
+// 実行例: java -Xmx8g ImagePyramidBenchmark 2000 8000 12000
+public class ImagePyramidBenchmark {
+    private static final int PANEL_WIDTH = 900;
+    private static final int PANEL_HEIGHT = 800;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {1000, 4000, 8000, 10000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        BufferedImage screen = new BufferedImage(PANEL_WIDTH, PANEL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        System.out.printf("%10s %8s %12s %12s %12s%n", "size", "MP", "build(ms)", "direct(ms)", "pyramid(ms)");
+        for (int size : sizes) {
+            BufferedImage image = BenchmarkHarness.createSyntheticImage(size, size);
+
+            long t0 = System.nanoTime();
+            ImagePyramid pyramid = new ImagePyramid(image);
+            double buildMs = (System.nanoTime() - t0) / 1e6;
+
+            Rectangle dest = fit(image.getWidth(), image.getHeight());
+            double directMs = measure(() -> {
+                Graphics2D g2d = screen.createGraphics();
+                g2d.drawImage(image, dest.x, dest.y, dest.width, dest.height, null);
+                g2d.dispose();
+                return screen;
+            });
+            double pyramidMs = measure(() -> {
+                Graphics2D g2d = screen.createGraphics();
+                pyramid.draw(g2d, dest);
+                g2d.dispose();
+                return screen;
+            });
+
+            System.out.printf("%10s %8.1f %12.1f %12.2f %12.2f%n",
+                size + "x" + size, size * (double) size / 1e6, buildMs, directMs, pyramidMs);
+        }
+    }
+
+    private static Rectangle fit(int imageWidth, int imageHeight) {
+        double scale = Math.min((double) PANEL_WIDTH / imageWidth, (double) PANEL_HEIGHT / imageHeight);
+        int w = (int) (imageWidth * scale);
+        int h = (int) (imageHeight * scale);
+        return new Rectangle((PANEL_WIDTH - w) / 2, (PANEL_HEIGHT - h) / 2, w, h);
+    }
+
+    private static double measure(BenchmarkHarness.Task task) throws Exception {
+        return BenchmarkHarness.averageMillis(task, WARMUP, ITERATIONS);
+    }
+}
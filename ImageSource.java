@@ -0,0 +1,201 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+// 画像ファイルを丸ごとデコードせずに、縮小プレビューと部分領域だけを読み出す
+// RasterCache にデコード済みの画素があれば、デコードせずにそこから読む
+// （メモリマップしたまま持ち、読み出すたびに必要な範囲だけをコピーするので、ヒープは出力の大きさで済む）
+public class ImageSource {
+    // 全体デコードの進捗通知と中断要求を受け取る
+    public interface ProgressListener {
+        void progress(float percentage);
+
+        boolean isCancelled();
+    }
+
+    private final File file;
+    private final int width;
+    private final int height;
+    private final RasterCache.Mapped cached; // メモリマップしたキャッシュの画素（なければnull）
+
+    public ImageSource(File file) throws IOException {
+        this.file = file;
+        this.cached = RasterCache.getDefault().get(file);
+        if (cached != null) {
+            width = cached.getWidth();
+            height = cached.getHeight();
+            return;
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + file);
+            }
+            ImageReader reader = createReader(in);
+            try {
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // デコード済みの画素がキャッシュにあったか
+    public boolean isCached() {
+        return cached != null;
+    }
+
+    // maxWidth x maxHeight に収まる程度まで間引いてデコードする
+    public BufferedImage readPreview(int maxWidth, int maxHeight) throws IOException {
+        int step = Math.max(1, Math.max(
+            (int) Math.ceil((double) width / maxWidth),
+            (int) Math.ceil((double) height / maxHeight)));
+        if (cached != null) {
+            return cached.read(new Rectangle(0, 0, width, height), step);
+        }
+        ImageReadParam param = new ImageReadParam();
+        param.setSourceSubsampling(step, step, 0, 0);
+        return read(param);
+    }
+
+    // 元画像座標の指定領域だけをデコードする
+    public BufferedImage readRegion(Rectangle region) throws IOException {
+        return readRegion(region, 1);
+    }
+
+    // 元画像座標の指定領域だけを step 画素ごとに間引いてデコードする
+    public BufferedImage readRegion(Rectangle region, int step) throws IOException {
+        Rectangle bounds = region.intersection(new Rectangle(0, 0, width, height));
+        if (bounds.isEmpty()) {
+            throw new IOException("Region is outside of the image: " + region);
+        }
+        if (cached != null) {
+            return cached.read(bounds, step);
+        }
+        ImageReadParam param = new ImageReadParam();
+        param.setSourceRegion(bounds);
+        if (step > 1) {
+            param.setSourceSubsampling(step, step, 0, 0);
+        }
+        return read(param);
+    }
+
+    // 画像全体をデコードする。中断された場合は null を返す（キャッシュには書き込まない）
+    public BufferedImage readAll(ProgressListener listener) throws IOException {
+        return readAll(listener, false);
+    }
+
+    // cache が true なら、デコードした画素を次回のためにバックグラウンドでキャッシュに書き込む
+    // 利用者が開き直しそうな画像だけで指定する（一括処理や先読みで指定するとキャッシュがすぐに埋まる）
+    public BufferedImage readAll(ProgressListener listener, boolean cache) throws IOException {
+        if (cached != null) {
+            BufferedImage image = cached.read(new Rectangle(0, 0, width, height), 1);
+            if (listener != null) {
+                listener.progress(100f);
+            }
+            return image;
+        }
+        BufferedImage image = read(new ImageReadParam(), listener);
+        if (image != null && cache) {
+            RasterCache.getDefault().putLater(file, image);
+        }
+        return image;
+    }
+
+    private BufferedImage read(ImageReadParam param) throws IOException {
+        return read(param, null);
+    }
+
+    private BufferedImage read(ImageReadParam param, ProgressListener listener) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + file);
+            }
+            ImageReader reader = createReader(in);
+            try {
+                if (listener != null) {
+                    reader.addIIOReadProgressListener(new ReadProgressAdapter(listener));
+                }
+                BufferedImage image = reader.read(0, param);
+                if (listener != null && listener.isCancelled()) {
+                    return null;
+                }
+                return image;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ImageReader createReader(ImageInputStream in) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(in, true, true);
+        return reader;
+    }
+
+    // ImageReader の進捗イベントを ProgressListener に中継し、キャンセル時はデコードを中断する
+    private static class ReadProgressAdapter implements IIOReadProgressListener {
+        private final ProgressListener listener;
+
+        ReadProgressAdapter(ProgressListener listener) {
+            this.listener = listener;
+        }
+
+        public void imageProgress(ImageReader source, float percentageDone) {
+            listener.progress(percentageDone);
+            if (listener.isCancelled()) {
+                source.abort();
+            }
+        }
+
+        public void imageStarted(ImageReader source, int imageIndex) {
+        }
+
+        public void imageComplete(ImageReader source) {
+            if (listener != null) {
+                listener.progress(100f);
+            }
+        }
+
+        public void readAborted(ImageReader source) {
+        }
+
+        public void sequenceStarted(ImageReader source, int minIndex) {
+        }
+
+        public void sequenceComplete(ImageReader source) {
+        }
+
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+        }
+
+        public void thumbnailProgress(ImageReader source, float percentageDone) {
+        }
+
+        public void thumbnailComplete(ImageReader source) {
+        }
+    }
+}
@@ -1,23 +1,56 @@
 import javax.swing.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 public class ImageViewer extends JFrame {
+    private static final int THUMBNAIL_WIDTH = 180;
+    private static final long THUMBNAIL_CACHE_BYTES = 32L * 1024 * 1024;
+    private static final int DISPLAY_HEIGHT = 500;
+    // フォルダ表示で前後それぞれ何枚先読みするか
+    private static final int PREFETCH_RADIUS = 2;
+    private static final long PREFETCH_CACHE_BYTES = Math.min(512L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 3);
+    
     private JLabel imageLabel;
     private JButton selectButton;
     private JButton cropButton;
+    private JButton cancelButton;
+    private JButton folderButton;
+    private JButton prevButton;
+    private JButton nextButton;
+    private JLabel positionLabel;
+    private FolderPrefetcher prefetcher; // フォルダ表示中のみ
+    private int folderIndex;
+    private JProgressBar loadProgress;
+    private SwingWorker<BufferedImage[], Void> loadWorker; // 読み込み中の処理（なければnull）
     private Point startPoint;
     private Point endPoint;
     private boolean isDragging = false;
     private BufferedImage originalImage;
-    private JPanel croppedImagesPanel;
-    private List<BufferedImage> croppedImages = new ArrayList<>();
+    private CropGallery croppedGallery;
+    private File currentFile; // 表示中の画像ファイル
+    // クロップ履歴は元ファイルと範囲だけを持ち、サムネイルは上限付きキャッシュに置く
+    // 履歴はファイルに記録され、次回の起動時に復元される（サムネイルは表示されたときに作る）
+    private final CropJournal journal = CropJournal.open("ImageViewer");
+    private final List<CropRecord> croppedImages = journal.getRecords();
+    private final ThumbnailCache thumbnailCache = new ThumbnailCache(THUMBNAIL_CACHE_BYTES, THUMBNAIL_WIDTH);
+    private JLabel memoryLabel;
+    private final EncodeQueue encodeQueue = new EncodeQueue(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+    private EncodeOptions encodeOptions = EncodeOptions.defaults();
+    private final FrameTimer frameTimer = new FrameTimer("ImageViewer");
     
     public ImageViewer() {
+        // 保存済みの画像の索引は大きくなることがあるので、保存するまでにバックグラウンドで読んでおく
+        CropHashIndex.preload();
         setTitle("画像ビューア（クロップ機能付き）");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout());
@@ -32,6 +65,7 @@ public class ImageViewer extends JFrame {
         imageLabel = new JLabel() {
             @Override
             protected void paintComponent(Graphics g) {
+                frameTimer.begin();
                 super.paintComponent(g);
                 if (isDragging && startPoint != null && endPoint != null) {
                     Graphics2D g2d = (Graphics2D) g;
@@ -41,6 +75,7 @@ public class ImageViewer extends JFrame {
                     g2d.setColor(Color.BLUE);
                     g2d.drawRect(rect.x, rect.y, rect.width, rect.height);
                 }
+                frameTimer.end();
             }
         };
         imageLabel.setHorizontalAlignment(JLabel.CENTER);
@@ -55,15 +90,17 @@ public class ImageViewer extends JFrame {
             
             @Override
             public void mouseDragged(MouseEvent e) {
+                Rectangle oldRect = selectionRect();
                 endPoint = e.getPoint();
-                imageLabel.repaint();
+                repaintSelection(oldRect, selectionRect());
             }
             
             @Override
             public void mouseReleased(MouseEvent e) {
+                Rectangle oldRect = selectionRect();
                 isDragging = false;
                 endPoint = e.getPoint();
-                imageLabel.repaint();
+                repaintSelection(oldRect, null);
             }
         };
         
@@ -75,10 +112,99 @@ public class ImageViewer extends JFrame {
         leftPanel.add(scrollPane, BorderLayout.CENTER);
         
         // 右側パネル（クロップ画像）
-        croppedImagesPanel = new JPanel();
-        croppedImagesPanel.setLayout(new BoxLayout(croppedImagesPanel, BoxLayout.Y_AXIS));
-        JScrollPane rightScrollPane = new JScrollPane(croppedImagesPanel);
-        rightScrollPane.setPreferredSize(new Dimension(200, 0));
+        // 表示中のセルだけを描画するリストにする（ダブルクリックでも保存）
+        croppedGallery = new CropGallery(croppedImages, thumbnailCache);
+        croppedGallery.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    int index = croppedGallery.locationToIndex(e.getPoint());
+                    if (index >= 0 && croppedGallery.getCellBounds(index, index).contains(e.getPoint())) {
+                        saveImage(croppedImages.get(index));
+                    }
+                }
+            }
+        });
+        JScrollPane galleryScrollPane = new JScrollPane(croppedGallery);
+        
+        // 保存ボタン
+        JButton saveButton = new JButton("保存");
+        saveButton.setEnabled(false);
+        saveButton.addActionListener(e -> {
+            CropRecord selected = croppedGallery.getSelectedValue();
+            if (selected != null) {
+                saveImage(selected);
+            }
+        });
+        croppedGallery.addListSelectionListener(e -> saveButton.setEnabled(croppedGallery.getSelectedIndex() >= 0));
+        
+        // 一括保存ボタンと保存設定ボタン
+        JButton saveAllButton = new JButton("すべて保存");
+        saveAllButton.addActionListener(e -> saveAllImages());
+        JButton optionsButton = new JButton("保存設定");
+        optionsButton.addActionListener(e -> {
+            EncodeOptions options = EncodeOptions.showDialog(this, encodeOptions, Locale.JAPANESE);
+            if (options != null) {
+                encodeOptions = options;
+            }
+        });
+        
+        // 元に戻す・やり直し（Ctrl+Z / Ctrl+Y でも操作できる）
+        JButton undoButton = new JButton("元に戻す");
+        JButton redoButton = new JButton("やり直す");
+        Action undoAction = new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                if (journal.undo() != null) {
+                    croppedGallery.recordRemoved();
+                }
+                undoButton.setEnabled(journal.canUndo());
+                redoButton.setEnabled(journal.canRedo());
+            }
+        };
+        Action redoAction = new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                if (journal.redo() != null) {
+                    croppedGallery.recordAdded();
+                }
+                undoButton.setEnabled(journal.canUndo());
+                redoButton.setEnabled(journal.canRedo());
+            }
+        };
+        undoButton.addActionListener(undoAction);
+        redoButton.addActionListener(redoAction);
+        undoButton.setEnabled(journal.canUndo());
+        redoButton.setEnabled(journal.canRedo());
+        // クロップを追加したときもボタンの状態を更新する
+        croppedGallery.getModel().addListDataListener(new ListDataListener() {
+            public void intervalAdded(ListDataEvent e) {
+                undoButton.setEnabled(journal.canUndo());
+                redoButton.setEnabled(journal.canRedo());
+            }
+            
+            public void intervalRemoved(ListDataEvent e) {
+            }
+            
+            public void contentsChanged(ListDataEvent e) {
+            }
+        });
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(
+            KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undoCrop");
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(
+            KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redoCrop");
+        getRootPane().getActionMap().put("undoCrop", undoAction);
+        getRootPane().getActionMap().put("redoCrop", redoAction);
+        
+        JPanel galleryButtonPanel = new JPanel(new GridLayout(0, 1));
+        galleryButtonPanel.add(saveButton);
+        galleryButtonPanel.add(saveAllButton);
+        galleryButtonPanel.add(optionsButton);
+        galleryButtonPanel.add(undoButton);
+        galleryButtonPanel.add(redoButton);
+        
+        JPanel rightPanel = new JPanel(new BorderLayout());
+        rightPanel.add(galleryScrollPane, BorderLayout.CENTER);
+        rightPanel.add(galleryButtonPanel, BorderLayout.SOUTH);
+        rightPanel.setPreferredSize(new Dimension(220, 0));
         
         // ボタンパネル
         JPanel buttonPanel = new JPanel();
@@ -86,16 +212,67 @@ public class ImageViewer extends JFrame {
         cropButton = new JButton("選択範囲をクロップ");
         cropButton.setEnabled(false);
         
+        // 読み込み中のみ表示する進捗バーとキャンセルボタン
+        loadProgress = new JProgressBar(0, 100);
+        loadProgress.setStringPainted(true);
+        loadProgress.setVisible(false);
+        cancelButton = new JButton("キャンセル");
+        cancelButton.setVisible(false);
+        
+        // フォルダ内の画像を前後に移動して表示する（左右キーでも移動）
+        folderButton = new JButton("フォルダを開く");
+        prevButton = new JButton("◀");
+        nextButton = new JButton("▶");
+        positionLabel = new JLabel();
+        prevButton.setEnabled(false);
+        nextButton.setEnabled(false);
+        folderButton.addActionListener(e -> selectFolder());
+        prevButton.addActionListener(e -> showFolderImage(folderIndex - 1));
+        nextButton.addActionListener(e -> showFolderImage(folderIndex + 1));
+        JRootPane rootPane = getRootPane();
+        rootPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_LEFT, 0), "prevImage");
+        rootPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_RIGHT, 0), "nextImage");
+        rootPane.getActionMap().put("prevImage", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                if (prefetcher != null) {
+                    showFolderImage(folderIndex - 1);
+                }
+            }
+        });
+        rootPane.getActionMap().put("nextImage", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                if (prefetcher != null) {
+                    showFolderImage(folderIndex + 1);
+                }
+            }
+        });
+        
         selectButton.addActionListener(e -> selectAndDisplayImage());
         cropButton.addActionListener(e -> cropSelectedArea());
+        cancelButton.addActionListener(e -> {
+            if (loadWorker != null) {
+                loadWorker.cancel(false);
+            }
+        });
         
         buttonPanel.add(selectButton);
+        buttonPanel.add(folderButton);
+        buttonPanel.add(prevButton);
+        buttonPanel.add(positionLabel);
+        buttonPanel.add(nextButton);
         buttonPanel.add(cropButton);
+        buttonPanel.add(loadProgress);
+        buttonPanel.add(cancelButton);
+        
+        // ヒープ使用量とサムネイルキャッシュの使用量を1秒ごとに表示
+        memoryLabel = new JLabel();
+        buttonPanel.add(memoryLabel);
+        new Timer(1000, e -> updateMemoryLabel()).start();
         leftPanel.add(buttonPanel, BorderLayout.SOUTH);
         
         // スプリットペインに追加
         splitPane.setLeftComponent(leftPanel);
-        splitPane.setRightComponent(rightScrollPane);
+        splitPane.setRightComponent(rightPanel);
         
         add(splitPane, BorderLayout.CENTER);
         
@@ -103,6 +280,18 @@ public class ImageViewer extends JFrame {
         setLocationRelativeTo(null);
     }
     
+    private void updateMemoryLabel() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedHeap = runtime.totalMemory() - runtime.freeMemory();
+        memoryLabel.setText(String.format("ヒープ %d/%d MB  サムネイル %.1f/%.1f MB",
+            usedHeap >> 20, runtime.maxMemory() >> 20,
+            thumbnailCache.getUsedBytes() / 1048576.0, thumbnailCache.getMaxBytes() / 1048576.0));
+        if (prefetcher != null) {
+            memoryLabel.setText(memoryLabel.getText() + String.format("  先読み %.0f MB ヒット率 %.0f%% デコード %.0f ms",
+                prefetcher.getUsedBytes() / 1048576.0, prefetcher.getHitRate() * 100, prefetcher.getAverageDecodeMillis()));
+        }
+    }
+    
     private Rectangle createRect(Point p1, Point p2) {
         return new Rectangle(
             Math.min(p1.x, p2.x),
@@ -112,14 +301,31 @@ public class ImageViewer extends JFrame {
         );
     }
     
+    // 現在表示中の選択範囲（表示していなければnull）
+    private Rectangle selectionRect() {
+        if (isDragging && startPoint != null && endPoint != null) {
+            return createRect(startPoint, endPoint);
+        }
+        return null;
+    }
+    
+    // 選択範囲の変更前後を合わせた領域だけを再描画する
+    private void repaintSelection(Rectangle oldRect, Rectangle newRect) {
+        Rectangle dirty = oldRect;
+        if (newRect != null) {
+            dirty = dirty == null ? newRect : dirty.union(newRect);
+        }
+        if (dirty != null) {
+            // 枠線は右端・下端に1ピクセルはみ出す
+            imageLabel.repaint(dirty.x, dirty.y, dirty.width + 1, dirty.height + 1);
+        }
+    }
+    
     private void selectAndDisplayImage() {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setFileFilter(new javax.swing.filechooser.FileFilter() {
             public boolean accept(File f) {
-                if (f.isDirectory()) return true;
-                String name = f.getName().toLowerCase();
-                return name.endsWith(".jpg") || name.endsWith(".jpeg") || 
-                       name.endsWith(".png") || name.endsWith(".gif");
+                return f.isDirectory() || ImageFiles.isImage(f);
             }
             
             public String getDescription() {
@@ -130,33 +336,163 @@ public class ImageViewer extends JFrame {
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
-            try {
-                // 画像をBufferedImageとして読み込み
-                ImageIcon icon = new ImageIcon(selectedFile.getPath());
-                Image image = icon.getImage();
-                originalImage = new BufferedImage(
-                    image.getWidth(null),
-                    image.getHeight(null),
-                    BufferedImage.TYPE_INT_RGB
-                );
+            closeFolder();
+            loadImageAsync(selectedFile);
+        }
+    }
+    
+    private void selectFolder() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        List<File> files = ImageFiles.list(fileChooser.getSelectedFile());
+        if (files.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "画像ファイルがありません", "エラー", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        closeFolder();
+        prefetcher = new FolderPrefetcher(files, PREFETCH_RADIUS, PREFETCH_CACHE_BYTES, DISPLAY_HEIGHT);
+        showFolderImage(0);
+    }
+    
+    private void closeFolder() {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+            prefetcher = null;
+        }
+        prevButton.setEnabled(false);
+        nextButton.setEnabled(false);
+        positionLabel.setText("");
+    }
+    
+    // 先読み済みならすぐに表示し、読み込み中なら完了したときに表示する
+    private void showFolderImage(int index) {
+        if (index < 0 || index >= prefetcher.size()) {
+            return;
+        }
+        if (loadWorker != null) {
+            loadWorker.cancel(false);
+        }
+        folderIndex = index;
+        FolderPrefetcher current = prefetcher;
+        prevButton.setEnabled(index > 0);
+        nextButton.setEnabled(index < current.size() - 1);
+        positionLabel.setText(String.format("%d / %d  %s", index + 1, current.size(), current.getFile(index).getName()));
+        
+        CompletableFuture<FolderPrefetcher.Entry> future = current.open(index);
+        if (!future.isDone()) {
+            loadProgress.setIndeterminate(true);
+            loadProgress.setStringPainted(false);
+            loadProgress.setVisible(true);
+        }
+        future.whenComplete((entry, ex) -> SwingUtilities.invokeLater(() -> {
+            if (prefetcher != current || folderIndex != index) {
+                // 完了前に別の画像へ移動した
+                return;
+            }
+            loadProgress.setVisible(false);
+            loadProgress.setIndeterminate(false);
+            loadProgress.setStringPainted(true);
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+                positionLabel.setText(positionLabel.getText() + "（読み込み失敗: " + cause.getMessage() + "）");
+                return;
+            }
+            showImage(entry.getFile(), entry.getImage(), entry.getDisplayImage());
+            imageLabel.revalidate();
+        }));
+    }
+    
+    private void showImage(File file, BufferedImage image, BufferedImage displayImage) {
+        originalImage = image;
+        currentFile = file;
+        startPoint = null;
+        endPoint = null;
+        imageLabel.setIcon(new DisplayImage(displayImage));
+        cropButton.setEnabled(true);
+    }
+    
+    // デコードと縮小をバックグラウンドで行う。完了するまで現在の画像はそのまま操作できる
+    private void loadImageAsync(File file) {
+        if (loadWorker != null) {
+            loadWorker.cancel(false);
+        }
+        
+        SwingWorker<BufferedImage[], Void> worker = new SwingWorker<BufferedImage[], Void>() {
+            @Override
+            protected BufferedImage[] doInBackground() throws Exception {
+                // デコード（進捗の0〜80%）。選んで開いた画像は次回すぐに開けるようキャッシュに書き込む
+                SwingWorker<?, ?> self = this;
+                ImageSource source = new ImageSource(file);
+                BufferedImage decoded = source.readAll(new ImageSource.ProgressListener() {
+                    public void progress(float percentage) {
+                        setProgress(Math.min(80, (int) (percentage * 0.8f)));
+                    }
+                    
+                    public boolean isCancelled() {
+                        return self.isCancelled();
+                    }
+                }, true);
+                if (decoded == null || isCancelled()) {
+                    return null;
+                }
                 
-                Graphics g = originalImage.createGraphics();
-                g.drawImage(image, 0, 0, null);
-                g.dispose();
+                // TYPE_INT_RGBに変換（キャッシュから開いた画像はすでに TYPE_INT_RGB/ARGB なのでそのまま使う）
+                BufferedImage image = source.isCached() ? decoded : RasterOps.toIntRGB(decoded);
+                setProgress(85);
+                if (isCancelled()) {
+                    return null;
+                }
                 
                 // 画像のリサイズ処理
-                Image resizedImage = image.getScaledInstance(-1, 500, Image.SCALE_SMOOTH);
-                imageLabel.setIcon(new ImageIcon(resizedImage));
-                cropButton.setEnabled(true);
-                pack();
-                setLocationRelativeTo(null);
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this,
-                    "画像の読み込みに失敗しました: " + ex.getMessage(),
-                    "エラー",
-                    JOptionPane.ERROR_MESSAGE);
+                BufferedImage displayImage = Downscaler.scaleToHeight(image, DISPLAY_HEIGHT);
+                setProgress(100);
+                return new BufferedImage[] {image, displayImage};
             }
-        }
+            
+            @Override
+            protected void done() {
+                if (loadWorker != this) {
+                    // 後から開始された読み込みに置き換えられている
+                    return;
+                }
+                loadWorker = null;
+                loadProgress.setVisible(false);
+                cancelButton.setVisible(false);
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    BufferedImage[] images = get();
+                    if (images == null) {
+                        return;
+                    }
+                    showImage(file, images[0], images[1]);
+                    pack();
+                    setLocationRelativeTo(null);
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(ImageViewer.this,
+                        "画像の読み込みに失敗しました: " + cause.getMessage(),
+                        "エラー",
+                        JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                loadProgress.setValue((Integer) e.getNewValue());
+            }
+        });
+        
+        loadWorker = worker;
+        loadProgress.setValue(0);
+        loadProgress.setVisible(true);
+        cancelButton.setVisible(true);
+        getContentPane().revalidate();
+        worker.execute();
     }
     
     private void cropSelectedArea() {
@@ -175,37 +511,31 @@ public class ImageViewer extends JFrame {
                 int width = (int) (rect.width * scaleX);
                 int height = (int) (rect.height * scaleY);
                 
-                // 範囲チェック
-                x = Math.max(0, Math.min(x, originalImage.getWidth()));
-                y = Math.max(0, Math.min(y, originalImage.getHeight()));
-                width = Math.min(width, originalImage.getWidth() - x);
-                height = Math.min(height, originalImage.getHeight() - y);
+                // 範囲チェック（画像からはみ出した部分は切り取る）
+                Rectangle sourceRect = CropGeometry.clamp(new Rectangle(x, y, width, height),
+                    originalImage.getWidth(), originalImage.getHeight());
+                if (sourceRect == null) {
+                    return;
+                }
                 
-                // クロップ実行
-                BufferedImage croppedImage = originalImage.getSubimage(x, y, width, height);
-                croppedImages.add(croppedImage);
+                // クロップ実行（履歴には範囲だけを残し、画素は保存時に読み直す）
+                BufferedImage croppedImage = RasterOps.crop(originalImage, sourceRect);
+                long hash = PerceptualHash.of(croppedImage);
+                // 同じような画像をすでにクロップしていれば追加せずにそれを選択する
+                for (CropRecord existing : croppedImages) {
+                    if (CropHashIndex.isDuplicate(existing.getHash(), hash)) {
+                        croppedGallery.setSelectedValue(existing, true);
+                        JOptionPane.showMessageDialog(this, "同じような画像はすでにクロップ済みです",
+                            "クロップ", JOptionPane.INFORMATION_MESSAGE);
+                        return;
+                    }
+                }
+                CropRecord record = new CropRecord(currentFile, sourceRect, hash);
+                journal.add(record);
+                thumbnailCache.put(record, Downscaler.scaleToWidth(croppedImage, THUMBNAIL_WIDTH));
                 
                 // クロップ画像を右パネルに追加
-                JLabel croppedLabel = new JLabel(new ImageIcon(
-                    croppedImage.getScaledInstance(180, -1, Image.SCALE_SMOOTH)
-                ));
-                croppedLabel.setBorder(BorderFactory.createLineBorder(Color.BLACK));
-                croppedLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-                
-                // 保存ボタン
-                JButton saveButton = new JButton("保存");
-                saveButton.setAlignmentX(Component.CENTER_ALIGNMENT);
-                saveButton.addActionListener(e -> saveImage(croppedImage));
-                
-                JPanel croppedPanel = new JPanel();
-                croppedPanel.setLayout(new BoxLayout(croppedPanel, BoxLayout.Y_AXIS));
-                croppedPanel.add(croppedLabel);
-                croppedPanel.add(saveButton);
-                croppedPanel.add(Box.createRigidArea(new Dimension(0, 10)));
-                
-                croppedImagesPanel.add(croppedPanel);
-                croppedImagesPanel.revalidate();
-                croppedImagesPanel.repaint();
+                croppedGallery.recordAdded();
                 
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this,
@@ -216,33 +546,164 @@ public class ImageViewer extends JFrame {
         }
     }
     
-    private void saveImage(BufferedImage image) {
+    private void saveImage(CropRecord record) {
+        // 以前のセッションも含めて同じような画像を保存済みなら確認する
+        CropHashIndex.Match saved = CropHashIndex.findSaved(record.getHash());
+        if (saved != null && JOptionPane.showConfirmDialog(this,
+                "同じような画像がすでに保存されています:\n" + saved.getFile() + "\nそれでも保存しますか？",
+                "保存", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+            return;
+        }
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setFileFilter(new javax.swing.filechooser.FileFilter() {
             public boolean accept(File f) {
                 if (f.isDirectory()) return true;
-                return f.getName().toLowerCase().endsWith(".png");
+                return isSupportedOutput(f);
             }
             
             public String getDescription() {
-                return "PNG画像 (*.png)";
+                return "PNG/JPEG画像 (*.png, *.jpg)";
             }
         });
         
         if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            try {
-                File file = fileChooser.getSelectedFile();
-                if (!file.getName().toLowerCase().endsWith(".png")) {
-                    file = new File(file.getPath() + ".png");
+            File file = fileChooser.getSelectedFile();
+            if (!isSupportedOutput(file)) {
+                file = new File(file.getPath() + "." + encodeOptions.getFormat());
+            }
+            // デコードと書き込みはバックグラウンドで行い、失敗したときだけ知らせる
+            encodeQueue.submit(record::materialize, file, encodeOptions).whenComplete((result, ex) -> {
+                if (ex == null) {
+                    CropHashIndex.recordSaved(record.getHash(), result.getFile());
+                } else {
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                        "画像の保存に失敗しました: " + ex.getMessage(),
+                        "エラー",
+                        JOptionPane.ERROR_MESSAGE));
                 }
-                javax.imageio.ImageIO.write(image, "png", file);
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this,
-                    "画像の保存に失敗しました: " + ex.getMessage(),
-                    "エラー",
-                    JOptionPane.ERROR_MESSAGE);
+            });
+        }
+    }
+    
+    private static boolean isSupportedOutput(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg");
+    }
+    
+    // すべてのクロップを選択したフォルダに並列で保存し、転送速度とファイルごとの所要時間を表示する
+    private void saveAllImages() {
+        if (croppedImages.isEmpty()) {
+            return;
+        }
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File directory = fileChooser.getSelectedFile();
+        // 保存設定で選んだ形式で書き出す
+        String format = encodeOptions.getFormat();
+        
+        // 同じ名前のファイルがすでにあれば、上書きするか、それらを飛ばすかを選んでもらう
+        int existing = 0;
+        for (int i = 0; i < croppedImages.size(); i++) {
+            if (outputFile(directory, i, format).exists()) {
+                existing++;
+            }
+        }
+        boolean overwrite = false;
+        if (existing > 0) {
+            Object[] choices = {"上書き", "既存のファイルは飛ばす", "キャンセル"};
+            int choice = JOptionPane.showOptionDialog(this,
+                existing + " 件のファイルが保存先にすでにあります。上書きしますか？",
+                "一括保存", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, choices, choices[1]);
+            if (choice != JOptionPane.YES_OPTION && choice != JOptionPane.NO_OPTION) {
+                return;
+            }
+            overwrite = choice == JOptionPane.YES_OPTION;
+        }
+        
+        // 以前に保存した画像と同じようなものがあれば、一覧を見せて保存するか飛ばすかを選んでもらう
+        List<String> duplicates = new ArrayList<>();
+        boolean[] duplicate = new boolean[croppedImages.size()];
+        for (int i = 0; i < croppedImages.size(); i++) {
+            if (!overwrite && outputFile(directory, i, format).exists()) {
+                continue;
+            }
+            CropHashIndex.Match saved = CropHashIndex.findSaved(croppedImages.get(i).getHash());
+            if (saved != null) {
+                duplicate[i] = true;
+                duplicates.add(outputFile(directory, i, format).getName() + " → " + saved.getFile());
+            }
+        }
+        boolean saveDuplicates = false;
+        if (!duplicates.isEmpty()) {
+            Object[] choices = {"保存する", "飛ばす", "キャンセル"};
+            int choice = JOptionPane.showOptionDialog(this,
+                duplicates.size() + " 件は保存済みの画像と同じようです。それでも保存しますか？\n" + listing(duplicates),
+                "一括保存", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, choices, choices[1]);
+            if (choice != JOptionPane.YES_OPTION && choice != JOptionPane.NO_OPTION) {
+                return;
+            }
+            saveDuplicates = choice == JOptionPane.YES_OPTION;
+        }
+        
+        List<CompletableFuture<EncodeQueue.Result>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        List<String> skipped = new ArrayList<>();
+        int kept = 0;
+        for (int i = 0; i < croppedImages.size(); i++) {
+            CropRecord record = croppedImages.get(i);
+            File file = outputFile(directory, i, format);
+            if (!overwrite && file.exists()) {
+                kept++;
+                continue;
+            }
+            if (duplicate[i] && !saveDuplicates) {
+                skipped.add(file.getName());
+                continue;
             }
+            CompletableFuture<EncodeQueue.Result> future = encodeQueue.submit(record::materialize, file, encodeOptions);
+            future.thenAccept(result -> CropHashIndex.recordSaved(record.getHash(), result.getFile()));
+            futures.add(future);
         }
+        int keptCount = kept;
+        
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long totalBytes = 0;
+            long totalLatency = 0;
+            long maxLatency = 0;
+            int saved = 0;
+            for (CompletableFuture<EncodeQueue.Result> future : futures) {
+                if (future.isCompletedExceptionally()) {
+                    continue;
+                }
+                EncodeQueue.Result result = future.join();
+                totalBytes += result.getBytes();
+                totalLatency += result.getLatencyNanos();
+                maxLatency = Math.max(maxLatency, result.getLatencyNanos());
+                saved++;
+            }
+            String message = String.format(
+                "%d/%d 件を保存しました（%.1f MB, %.2f 秒, %.1f MB/s）%n1件あたり 平均 %.0f ms, 最大 %.0f ms%n保存済みと同じため %d 件、既存のファイルがあるため %d 件を省略",
+                saved, futures.size(), totalBytes / 1048576.0, seconds, totalBytes / 1048576.0 / seconds,
+                saved > 0 ? totalLatency / 1e6 / saved : 0.0, maxLatency / 1e6, skipped.size(), keptCount)
+                + (skipped.isEmpty() ? "" : "\n保存済みと同じため省略したファイル:\n" + listing(skipped));
+            int messageType = saved == futures.size() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE;
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, message, "一括保存", messageType));
+        });
+    }
+    
+    private static File outputFile(File directory, int index, String format) {
+        return new File(directory, String.format("crop_%04d.%s", index + 1, format));
+    }
+    
+    // ダイアログに収まるように先頭の数行だけを並べる
+    private static String listing(List<String> lines) {
+        int shown = Math.min(lines.size(), 10);
+        String text = String.join("\n", lines.subList(0, shown));
+        return shown < lines.size() ? text + "\n…ほか " + (lines.size() - shown) + " 件" : text;
     }
     
     public static void main(String[] args) {
@@ -0,0 +1,129 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+// ビューア・クロッパーの主な処理（読み込み、表示用の縮小、クロップ、サムネイル作成、保存）の時間を合成画像で計測する
+// 各処理は BenchmarkHarness.measure で計測し、1回あたりの平均とばらつき（標準偏差）を求める
+// 結果は実行ごとに1行のJSONとして履歴ファイルに追記し、前回の結果との差を表示する
+//
+// 実行例: java -Xmx4g ImagingBenchmark [履歴ファイル] [ベンチマーク名の一部]
+public class ImagingBenchmark {
+    private static final int WIDTH = 6000;
+    private static final int HEIGHT = 4000;
+
+    public static void main(String[] args) throws Exception {
+        File history = new File(args.length > 0 ? args[0] : "imaging-benchmark.jsonl");
+        String filter = args.length > 1 ? args[1] : "";
+
+        // 24MPの合成画像をJPEGとPNGで書き出しておき、読み込みの計測に使う
+        BufferedImage photo = BenchmarkHarness.createSyntheticImage(WIDTH, HEIGHT);
+        File dir = Files.createTempDirectory("imaging-benchmark").toFile();
+        File jpeg = new File(dir, "photo.jpg");
+        File png = new File(dir, "photo.png");
+        EncodeQueue.write(photo, jpeg, EncodeOptions.defaults());
+        EncodeQueue.write(photo, png, EncodeOptions.defaults());
+        Rectangle cropRect = new Rectangle(WIDTH / 4, HEIGHT / 4, WIDTH / 2, HEIGHT / 2);
+        BufferedImage cropped = RasterOps.crop(photo, cropRect);
+        File jpegOut = new File(dir, "out.jpg");
+        File pngOut = new File(dir, "out.png");
+
+        Map<String, BenchmarkHarness.Task> tasks = new LinkedHashMap<>();
+        tasks.put("decode.jpeg.full", () -> ImageIO.read(jpeg));
+        tasks.put("decode.jpeg.preview", () -> new ImageSource(jpeg).readPreview(1920, 1080));
+        tasks.put("decode.png.full", () -> ImageIO.read(png));
+        // ImageViewer の表示用画像（高さ500）。以前の getScaledInstance と Downscaler
+        tasks.put("scale.fit.getScaledInstance", () ->
+            new ImageIcon(photo.getScaledInstance(-1, 500, Image.SCALE_SMOOTH)).getIconWidth());
+        tasks.put("scale.fit.downscaler", () -> Downscaler.scaleToHeight(photo, 500));
+        // 以前の getSubimage と描画によるコピーと、RasterOps の直接コピー
+        tasks.put("crop.getSubimage", () -> copy(photo.getSubimage(cropRect.x, cropRect.y, cropRect.width, cropRect.height)));
+        tasks.put("crop.rasterOps", () -> RasterOps.crop(photo, cropRect));
+        // ImageViewer のギャラリーと同じ幅
+        tasks.put("thumbnail.downscaler", () -> Downscaler.scaleToWidth(cropped, 180));
+        tasks.put("write.jpeg", () -> {
+            EncodeQueue.write(cropped, jpegOut, EncodeOptions.defaults());
+            return jpegOut.length();
+        });
+        tasks.put("write.png", () -> {
+            EncodeQueue.write(cropped, pngOut, EncodeOptions.defaults());
+            return pngOut.length();
+        });
+
+        Map<String, Double> previous = readPrevious(history);
+        List<BenchmarkHarness.Result> results = new ArrayList<>();
+        System.out.printf("%-30s %12s %10s %14s%n", "benchmark", "ms/op", "stddev", "vs previous");
+        for (Map.Entry<String, BenchmarkHarness.Task> entry : tasks.entrySet()) {
+            if (!entry.getKey().contains(filter)) {
+                continue;
+            }
+            BenchmarkHarness.Result result = BenchmarkHarness.measure(entry.getKey(), entry.getValue());
+            results.add(result);
+            Double before = previous.get(result.name);
+            System.out.printf("%-30s %12.3f %10.3f %14s%n", result.name, result.mean, result.stddev,
+                before == null ? "-" : String.format("%+.1f%%", (result.mean / before - 1) * 100));
+        }
+        appendRun(history, results);
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        Graphics2D g2d = copy.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return copy;
+    }
+
+    // ベンチマーク名ごとに、履歴でいちばん新しい時間を読む（一部だけを実行した回があっても比べられるように）
+    private static Map<String, Double> readPrevious(File history) throws IOException {
+        Map<String, Double> scores = new HashMap<>();
+        if (!history.isFile()) {
+            return scores;
+        }
+        Pattern result = Pattern.compile("\"name\":\"([^\"]+)\",\"score\":([-0-9.Ee]+)");
+        List<String> lines = Files.readAllLines(history.toPath(), StandardCharsets.UTF_8);
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            Matcher m = result.matcher(lines.get(i));
+            while (m.find()) {
+                scores.putIfAbsent(m.group(1), Double.parseDouble(m.group(2)));
+            }
+        }
+        return scores;
+    }
+
+    private static void appendRun(File history, List<BenchmarkHarness.Result> results) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"time\":\"").append(Instant.now())
+            .append("\",\"java\":\"").append(System.getProperty("java.version"))
+            .append("\",\"cpus\":").append(Runtime.getRuntime().availableProcessors())
+            .append(",\"unit\":\"ms/op\",\"results\":[");
+        for (int i = 0; i < results.size(); i++) {
+            BenchmarkHarness.Result r = results.get(i);
+            json.append(i == 0 ? "" : ",")
+                .append(String.format(Locale.ROOT, "{\"name\":\"%s\",\"score\":%.4f,\"stddev\":%.4f}",
+                    r.name, r.mean, r.stddev));
+        }
+        json.append("]}\n");
+        Files.write(history.toPath(), json.toString().getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        System.out.println("Appended to " + history);
+    }
+}
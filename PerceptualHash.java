@@ -0,0 +1,61 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+// 見た目が近い画像ほどビットの差（ハミング距離）が小さくなる64ビットのハッシュ（dHash）
+// 9x8のグレースケールに縮小し、各行で隣り合う画素の明るさの大小をビットにする
+// 無地の画像などは明るさの大小がほとんど決まらず、見た目が違っても同じようなハッシュになるため、
+// 縮小した画像の明るさの幅が FLAT_SPREAD 未満なら FLAT を返し、重複の判定には使わない
+public class PerceptualHash {
+    // 見分けられない（重複の判定に使わない）ハッシュ。一様な画像の dHash と同じ値
+    public static final long FLAT = 0;
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+    private static final int FLAT_SPREAD = 16;
+    // ファイルから求めるときは、短辺がこの画素数程度になるまで間引いて読む
+    // （これより粗く間引くと細かい模様で折り返しが起き、原寸から求めたハッシュとの距離が重複の判定を超えることがある）
+    private static final int SAMPLE = 512;
+
+    private PerceptualHash() {
+    }
+
+    // 元画像の rect の範囲のハッシュ。原寸を読まないので大きな範囲でも速い
+    public static long of(ImageSource source, Rectangle rect) throws IOException {
+        int step = Math.max(1, Math.min(rect.width, rect.height) / SAMPLE);
+        return of(source.readRegion(rect, step));
+    }
+
+    public static long of(BufferedImage image) {
+        BufferedImage small = Downscaler.scale(image, WIDTH, HEIGHT);
+        int[] rgb = small.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        long hash = 0;
+        int min = 255;
+        int max = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            int left = luminance(rgb[y * WIDTH]);
+            min = Math.min(min, left);
+            max = Math.max(max, left);
+            for (int x = 1; x < WIDTH; x++) {
+                int right = luminance(rgb[y * WIDTH + x]);
+                hash = (hash << 1) | (left > right ? 1 : 0);
+                min = Math.min(min, right);
+                max = Math.max(max, right);
+                left = right;
+            }
+        }
+        return max - min < FLAT_SPREAD ? FLAT : hash;
+    }
+
+    // 重複の判定に使えないハッシュか（明るさが1行ずつ単調に増えるだけの画像も FLAT と同じ値になる）
+    public static boolean isFlat(long hash) {
+        return hash == FLAT;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static int luminance(int rgb) {
+        return (((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114) / 1000;
+    }
+}
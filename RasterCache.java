@@ -0,0 +1,242 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// デコード済みの画素をディスクに保存しておき、同じ画像を開き直すときはデコードせずにメモリマップで読む
+// get はマップするだけで画素はコピーしない。Mapped.read で必要な範囲（間引いた行と列）だけを
+// 通常の TYPE_INT_RGB/ARGB の画像にコピーする（独自の DataBuffer にすると TYPE_CUSTOM になり、
+// 縮小や getRGB が1画素ずつの遅い処理になるため）
+// 書き込みは putLater でバックグラウンドで行い、読み込みを待たせない
+// キーは元ファイルのパス・更新日時・サイズ。合計サイズが上限を超えたら最後に使った日時が古いものから消す
+//
+// ファイル形式: ヘッダー（マジック, 幅, 高さ, アルファ有無, バイト順, パス）に続けて1画素1intの画素データ
+public class RasterCache {
+    private static final int MAGIC = 0x52415743; // "RAWC"
+    private static final String SUFFIX = ".raw";
+    private static final long DEFAULT_MAX_BYTES = 2L * 1024 * 1024 * 1024;
+
+    private static RasterCache defaultCache;
+
+    private final File directory;
+    private final long maxBytes;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "raster-cache-writer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    public RasterCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    // -DrasterCache.dir / -DrasterCache.maxBytes で場所と上限を変更できる
+    public static synchronized RasterCache getDefault() {
+        if (defaultCache == null) {
+            String dir = System.getProperty("rasterCache.dir",
+                new File(System.getProperty("java.io.tmpdir"), "java_samples-raster-cache").getPath());
+            long max = Long.getLong("rasterCache.maxBytes", DEFAULT_MAX_BYTES);
+            defaultCache = new RasterCache(new File(dir), max);
+        }
+        return defaultCache;
+    }
+
+    // メモリマップしたキャッシュの画素。read でヒープにコピーするのは求められた範囲だけ
+    public static class Mapped {
+        private final int width;
+        private final int height;
+        private final boolean hasAlpha;
+        private final IntBuffer pixels;
+
+        Mapped(int width, int height, boolean hasAlpha, IntBuffer pixels) {
+            this.width = width;
+            this.height = height;
+            this.hasAlpha = hasAlpha;
+            this.pixels = pixels;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        // bounds の範囲を step 画素ごとに間引いて（ImageReadParam の間引きと同じ位置の画素を）読む
+        public BufferedImage read(Rectangle bounds, int step) {
+            int w = (bounds.width + step - 1) / step;
+            int h = (bounds.height + step - 1) / step;
+            BufferedImage image = new BufferedImage(w, h,
+                hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            // 位置を持たない読み方にして、複数のスレッドから同時に読めるようにする
+            IntBuffer src = pixels.duplicate();
+            for (int y = 0; y < h; y++) {
+                int base = (bounds.y + y * step) * width + bounds.x;
+                if (step == 1) {
+                    src.position(base);
+                    src.get(data, y * w, w);
+                } else {
+                    for (int x = 0; x < w; x++) {
+                        data[y * w + x] = src.get(base + x * step);
+                    }
+                }
+            }
+            return image;
+        }
+    }
+
+    // キャッシュにあれば画素をメモリマップして返す（画素はまだ読まない）。なければ null
+    public Mapped get(File source) {
+        File cacheFile = cacheFileOf(source);
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), 4096));
+            if (header.getInt() != MAGIC) {
+                return null;
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            boolean hasAlpha = header.get() != 0;
+            ByteOrder order = header.get() == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            int pathLength = header.getInt();
+            if (pathLength < 0 || pathLength > header.remaining()) {
+                return null;
+            }
+            byte[] path = new byte[pathLength];
+            header.get(path);
+            if (!new String(path, StandardCharsets.UTF_8).equals(source.getAbsolutePath())) {
+                return null;
+            }
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+            long dataOffset = header.position();
+            long dataBytes = (long) width * height * 4;
+            if (channel.size() < dataOffset + dataBytes) {
+                return null;
+            }
+            // マップはチャネルを閉じても有効
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, dataBytes);
+            cacheFile.setLastModified(System.currentTimeMillis());
+            return new Mapped(width, height, hasAlpha, data.order(order).asIntBuffer());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    // 画素をバックグラウンドでキャッシュに書き込む（image はこの後変更しないこと）
+    public void putLater(File source, BufferedImage image) {
+        writer.execute(() -> put(source, image));
+    }
+
+    // 画素をキャッシュに書き込む。失敗してもキャッシュしないだけで例外は出さない
+    public void put(File source, BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long dataBytes = (long) width * height * 4;
+        // 1つのマップで扱える大きさまで
+        if (dataBytes > Integer.MAX_VALUE || dataBytes > maxBytes) {
+            return;
+        }
+        File cacheFile = cacheFileOf(source);
+        File tempFile = null;
+        try {
+            directory.mkdirs();
+            tempFile = File.createTempFile("raster", ".tmp", directory);
+            byte[] path = source.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+            boolean hasAlpha = image.getColorModel().hasAlpha();
+            ByteOrder order = ByteOrder.nativeOrder();
+
+            try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                ByteBuffer header = ByteBuffer.allocate(18 + path.length);
+                header.putInt(MAGIC).putInt(width).putInt(height);
+                header.put((byte) (hasAlpha ? 1 : 0));
+                header.put((byte) (order == ByteOrder.BIG_ENDIAN ? 0 : 1));
+                header.putInt(path.length).put(path);
+                header.flip();
+                channel.write(header);
+
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, channel.position(), dataBytes);
+                IntBuffer pixels = data.order(order).asIntBuffer();
+                int[] packed = packedPixels(image, hasAlpha);
+                if (packed != null) {
+                    pixels.put(packed, 0, width * height);
+                } else {
+                    int[] row = new int[width];
+                    for (int y = 0; y < height; y++) {
+                        image.getRGB(0, y, width, 1, row, 0, width);
+                        pixels.put(row);
+                    }
+                }
+                data.force();
+            }
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            evict();
+        } catch (IOException ex) {
+            System.err.println("Failed to cache raster of " + source + ": " + ex.getMessage());
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    // 画素が1画素1intで隙間なく並んでいれば、その配列をそのまま返す
+    private static int[] packedPixels(BufferedImage image, boolean hasAlpha) {
+        int expectedType = hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        WritableRaster raster = image.getRaster();
+        if (image.getType() != expectedType || raster.getParent() != null
+                || !(raster.getDataBuffer() instanceof DataBufferInt) || raster.getDataBuffer().getOffset() != 0) {
+            return null;
+        }
+        return ((DataBufferInt) raster.getDataBuffer()).getData();
+    }
+
+    private File cacheFileOf(File source) {
+        String path = source.getAbsolutePath();
+        String name = String.format("%08x_%x_%x%s", path.hashCode(), source.lastModified(), source.length(), SUFFIX);
+        return new File(directory, name);
+    }
+
+    // 合計サイズが上限以下になるまで、最後に使った日時が古いものから削除する
+    private synchronized void evict() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && total > maxBytes; i++) {
+            long size = files[i].length();
+            if (files[i].delete()) {
+                total -= size;
+            }
+        }
+    }
+}
@@ -1,53 +1,274 @@
 import javafx.application.Application;
+import javafx.application.ConditionalFeature;
+import javafx.application.Platform;
+import javafx.geometry.Pos;
 import javafx.scene.Group;
 import javafx.scene.PerspectiveCamera;
 import javafx.scene.Scene;
+import javafx.scene.SceneAntialiasing;
+import javafx.scene.SubScene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.Box;
 import javafx.scene.transform.Rotate;
 import javafx.stage.Stage;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// 実行例: java Simple3DExample --mode=batched --count=10000
+//   --mode=boxes   : 立方体ごとに Box ノードと Rotate を持つ（既定）
+//   --mode=batched : すべての立方体を1つの TriangleMesh にまとめる
+// 実行中は B キーでモード切り替え、0/1/2/3 キーで 1/1,000/10,000/50,000 個に切り替え
+//
+// ベンチマーク: java Simple3DExample --benchmark=10 --csv=frames.csv --mode=batched --count=10000
+//   GPUなしで動くようソフトウェアパイプライン（prism.order=sw）で起動し、ウォームアップ後に
+//   指定秒数のフレーム間隔を計測してCSVに書き出し、終了する
 public class Simple3DExample extends Application {
+    private static final float BOX_SIZE = 100;
+    private static final double SPACING = BOX_SIZE * 1.5;
+    // フレームレートに関係なく一定の速さで回転させる
+    private static final double DEGREES_PER_SECOND = 30;
+    private static final long STATS_INTERVAL_NANOS = 500_000_000L;
+    private static final long BENCHMARK_WARMUP_NANOS = 2_000_000_000L;
+    // ヒストグラムに表示する範囲
+    private static final double HISTOGRAM_MAX_MILLIS = 50;
+
+    private final Group world = new Group();
+    private final Label stats = new Label();
+    private final Canvas histogram = new Canvas(250, 60);
+    private final PerspectiveCamera camera = new PerspectiveCamera(true);
+    private final PhongMaterial material = new PhongMaterial();
+
+    private boolean batched;
+    private int count;
+    private double angle;
+
+    // boxes モードの回転（立方体ごとに2つ）
+    private final List<Rotate> rotates = new ArrayList<>();
+    // batched モードのメッシュ
+    private BoxBatch batch;
+
+    // フレーム時間の集計（表示用は0.5秒ごとにリセットする）
+    private final FrameStats windowStats = new FrameStats(false);
+    private long lastFrame;
+    private long statsStart;
+
+    // ベンチマーク
+    private long benchmarkNanos;
+    private File benchmarkCsv;
+    private FrameStats benchmarkStats;
+    private long benchmarkStart;
 
     @Override
     public void start(Stage stage) {
-        // 3Dオブジェクト（立方体）を作成
-        Box box = new Box(100, 100, 100);
-        PhongMaterial material = new PhongMaterial();
+        batched = "batched".equals(getParameters().getNamed().get("mode"));
+        count = Integer.parseInt(getParameters().getNamed().getOrDefault("count", "1"));
+        String benchmark = getParameters().getNamed().get("benchmark");
+        if (benchmark != null) {
+            benchmarkNanos = (long) (Double.parseDouble(benchmark) * 1e9);
+            benchmarkCsv = new File(getParameters().getNamed().getOrDefault("csv", "simple3d-benchmark.csv"));
+        }
         material.setDiffuseColor(Color.DARKCYAN);
-        box.setMaterial(material);
 
-        // 回転アニメーションを追加
-        Rotate rotateX = new Rotate(0, Rotate.X_AXIS);
-        Rotate rotateY = new Rotate(0, Rotate.Y_AXIS);
-        box.getTransforms().addAll(rotateX, rotateY);
+        // 3Dシーンの上にフレーム時間を重ねて表示する
+        SubScene subScene = new SubScene(world, 600, 400, true, SceneAntialiasing.DISABLED);
+        subScene.setCamera(camera);
+        stats.setTextFill(Color.WHITE);
+        stats.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5); -fx-padding: 4;");
+        VBox overlay = new VBox(stats, histogram);
+        overlay.setPickOnBounds(false);
+        overlay.setMaxSize(VBox.USE_PREF_SIZE, VBox.USE_PREF_SIZE);
+        StackPane root = new StackPane(subScene, overlay);
+        StackPane.setAlignment(overlay, Pos.TOP_LEFT);
+        subScene.widthProperty().bind(root.widthProperty());
+        subScene.heightProperty().bind(root.heightProperty());
+
+        Scene scene = new Scene(root, 600, 400);
+        scene.setOnKeyPressed(e -> {
+            switch (e.getCode()) {
+                case B: batched = !batched; break;
+                case DIGIT0: count = 1; break;
+                case DIGIT1: count = 1_000; break;
+                case DIGIT2: count = 10_000; break;
+                case DIGIT3: count = 50_000; break;
+                default: return;
+            }
+            buildWorld();
+        });
+        buildWorld();
 
         // JavaFXアニメーションタイマーを使用して回転させる
         javafx.animation.AnimationTimer timer = new javafx.animation.AnimationTimer() {
             @Override
             public void handle(long now) {
-                rotateX.setAngle(rotateX.getAngle() + 0.5);
-                rotateY.setAngle(rotateY.getAngle() + 0.5);
+                long updateStart = System.nanoTime();
+                if (lastFrame != 0) {
+                    angle += DEGREES_PER_SECOND * (now - lastFrame) / 1e9;
+                }
+                if (batched) {
+                    batch.setRotation(angle, angle);
+                } else {
+                    for (Rotate rotate : rotates) {
+                        rotate.setAngle(angle);
+                    }
+                }
+                recordFrame(now, System.nanoTime() - updateStart);
             }
         };
         timer.start();
 
-        // グループとカメラを設定
-        Group root = new Group(box);
-        Scene scene = new Scene(root, 600, 400, true);
-        PerspectiveCamera camera = new PerspectiveCamera(true);
-        camera.setTranslateZ(-500);
-        scene.setCamera(camera);
-
         // ステージの設定
         stage.setTitle("3D Cube Example");
         stage.setScene(scene);
         stage.show();
     }
 
+    // 立方体を格子状に並べ直す
+    private void buildWorld() {
+        world.getChildren().clear();
+        rotates.clear();
+        batch = null;
+
+        int side = (int) Math.ceil(Math.cbrt(count));
+        double offset = (side - 1) * SPACING / 2;
+        float[] centers = new float[count * 3];
+        for (int i = 0; i < count; i++) {
+            centers[i * 3] = (float) ((i % side) * SPACING - offset);
+            centers[i * 3 + 1] = (float) ((i / side % side) * SPACING - offset);
+            centers[i * 3 + 2] = (float) ((i / (side * side)) * SPACING - offset);
+        }
+
+        if (batched) {
+            batch = new BoxBatch(centers, BOX_SIZE);
+            batch.getView().setMaterial(material);
+            batch.setRotation(angle, angle);
+            world.getChildren().add(batch.getView());
+        } else {
+            for (int i = 0; i < count; i++) {
+                Box box = new Box(BOX_SIZE, BOX_SIZE, BOX_SIZE);
+                box.setMaterial(material);
+                box.setTranslateX(centers[i * 3]);
+                box.setTranslateY(centers[i * 3 + 1]);
+                box.setTranslateZ(centers[i * 3 + 2]);
+                // 回転アニメーションを追加
+                Rotate rotateX = new Rotate(angle, Rotate.X_AXIS);
+                Rotate rotateY = new Rotate(angle, Rotate.Y_AXIS);
+                box.getTransforms().addAll(rotateX, rotateY);
+                rotates.add(rotateX);
+                rotates.add(rotateY);
+                world.getChildren().add(box);
+            }
+        }
+
+        // 全体が収まる距離までカメラを離す
+        double distance = Math.max(500, side * SPACING * 2.5);
+        camera.setTranslateZ(-distance);
+        camera.setFarClip(distance * 3);
+
+        lastFrame = 0;
+    }
+
+    // フレーム間隔を集計し、0.5秒ごとに統計とヒストグラムを表示する
+    private void recordFrame(long now, long updateNanos) {
+        if (lastFrame == 0) {
+            // 最初のフレーム（または並べ直した直後）から集計し直す
+            lastFrame = now;
+            statsStart = now;
+            windowStats.reset();
+            return;
+        }
+        long interval = now - lastFrame;
+        lastFrame = now;
+        windowStats.record(interval, updateNanos);
+        if (benchmarkNanos > 0) {
+            recordBenchmark(now, interval, updateNanos);
+        }
+
+        if (now - statsStart >= STATS_INTERVAL_NANOS) {
+            stats.setText(String.format("%s  cubes=%,d  nodes=%,d  pipeline=%s%s%n%s",
+                batched ? "batched" : "boxes", count, world.getChildren().size(), pipeline(),
+                Platform.isSupported(ConditionalFeature.SCENE3D) ? "" : " (no 3D)",
+                windowStats.summary()));
+            drawHistogram();
+            statsStart = now;
+            windowStats.reset();
+        }
+    }
+
+    private static String pipeline() {
+        return System.getProperty("prism.order", "default");
+    }
+
+    // 0〜50msのフレーム間隔を1ms刻みで棒グラフにする
+    private void drawHistogram() {
+        int[] counts = windowStats.getHistogram();
+        int perBar = (int) Math.round(1 / FrameTimer.BUCKET_MILLIS);
+        int bars = (int) HISTOGRAM_MAX_MILLIS;
+        int[] merged = new int[bars];
+        int max = 1;
+        for (int i = 0; i < counts.length; i++) {
+            int bar = Math.min(bars - 1, i / perBar);
+            merged[bar] += counts[i];
+            max = Math.max(max, merged[bar]);
+        }
+
+        GraphicsContext gc = histogram.getGraphicsContext2D();
+        double w = histogram.getWidth();
+        double h = histogram.getHeight();
+        double barWidth = w / bars;
+        gc.setFill(Color.rgb(0, 0, 0, 0.5));
+        gc.fillRect(0, 0, w, h);
+        for (int i = 0; i < bars; i++) {
+            double barHeight = (h - 2) * merged[i] / max;
+            // 60fps（16.7ms）を超えるフレームは赤で表示
+            gc.setFill(i < 17 ? Color.LIMEGREEN : Color.ORANGERED);
+            gc.fillRect(i * barWidth, h - barHeight, Math.max(1, barWidth - 1), barHeight);
+        }
+    }
+
+    // ウォームアップ後に指定時間だけ計測し、CSVを書き出して終了する
+    private void recordBenchmark(long now, long interval, long updateNanos) {
+        if (benchmarkStats == null) {
+            if (benchmarkStart == 0) {
+                benchmarkStart = now;
+            }
+            if (now - benchmarkStart < BENCHMARK_WARMUP_NANOS) {
+                return;
+            }
+            benchmarkStats = new FrameStats(true);
+            benchmarkStart = now;
+            return;
+        }
+        benchmarkStats.record(interval, updateNanos);
+        if (now - benchmarkStart >= benchmarkNanos) {
+            System.out.printf("%s cubes=%d pipeline=%s scene3d=%b%n%s%n",
+                batched ? "batched" : "boxes", count, pipeline(),
+                Platform.isSupported(ConditionalFeature.SCENE3D), benchmarkStats.summary());
+            try {
+                benchmarkStats.writeCsv(benchmarkCsv);
+                System.out.println("Wrote " + benchmarkCsv.getAbsolutePath());
+            } catch (IOException ex) {
+                System.err.println("Failed to write " + benchmarkCsv + ": " + ex.getMessage());
+            }
+            Platform.exit();
+        }
+    }
+
     public static void main(String[] args) {
+        // ベンチマークはGPUのない環境でも動くようソフトウェアパイプラインを使う（-Dprism.order 指定が優先）
+        for (String arg : args) {
+            if (arg.startsWith("--benchmark") && System.getProperty("prism.order") == null) {
+                System.setProperty("prism.order", "sw");
+            }
+        }
         launch(args);
     }
 }
-
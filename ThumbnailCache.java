@@ -0,0 +1,87 @@
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// クロップ履歴のサムネイルを使用バイト数の上限付きで保持するLRUキャッシュ
+// 追い出されたサムネイルは次に表示されるときにバックグラウンドで作り直す
+public class ThumbnailCache {
+    private final long maxBytes;
+    private final int thumbnailWidth;
+    private final LinkedHashMap<CropRecord, BufferedImage> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<CropRecord> pending = new HashSet<>();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "thumbnail-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long usedBytes;
+
+    public ThumbnailCache(long maxBytes, int thumbnailWidth) {
+        this.maxBytes = maxBytes;
+        this.thumbnailWidth = thumbnailWidth;
+    }
+
+    public int getThumbnailWidth() {
+        return thumbnailWidth;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized void put(CropRecord record, BufferedImage thumbnail) {
+        BufferedImage old = entries.put(record, thumbnail);
+        if (old != null) {
+            usedBytes -= sizeOf(old);
+        }
+        usedBytes += sizeOf(thumbnail);
+        evict();
+    }
+
+    // キャッシュになければ null を返し、読み込み完了後に onLoaded を EDT で呼ぶ
+    public synchronized BufferedImage get(CropRecord record, Runnable onLoaded) {
+        BufferedImage thumbnail = entries.get(record);
+        if (thumbnail == null && pending.add(record)) {
+            loader.execute(() -> load(record, onLoaded));
+        }
+        return thumbnail;
+    }
+
+    private void load(CropRecord record, Runnable onLoaded) {
+        try {
+            BufferedImage thumbnail = Downscaler.scaleToWidth(record.materialize(), thumbnailWidth);
+            put(record, thumbnail);
+            SwingUtilities.invokeLater(onLoaded);
+        } catch (IOException ex) {
+            System.err.println("Failed to load thumbnail of " + record.getSource() + ": " + ex.getMessage());
+        } finally {
+            synchronized (this) {
+                pending.remove(record);
+            }
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<CropRecord, BufferedImage>> it = entries.entrySet().iterator();
+        // 直前に追加した1件は残す
+        while (usedBytes > maxBytes && entries.size() > 1 && it.hasNext()) {
+            usedBytes -= sizeOf(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+}
@@ -0,0 +1,53 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// クロップ履歴のサムネイルをキャッシュから描くアイコン（正方形の枠に縦横比を保って収める）
+// 追い出されていれば読み込み完了まで枠だけを描き、完了したら onLoaded で描き直してもらう
+// セルレンダラーでは1つを使い回し、描くたびに setRecord で対象を切り替える
+public class ThumbnailIcon implements Icon {
+    private final ThumbnailCache cache;
+    private final Runnable onLoaded;
+    private CropRecord record;
+
+    public ThumbnailIcon(ThumbnailCache cache, Runnable onLoaded) {
+        this.cache = cache;
+        this.onLoaded = onLoaded;
+    }
+
+    public void setRecord(CropRecord record) {
+        this.record = record;
+    }
+
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+        if (record == null) {
+            return;
+        }
+        int size = getIconWidth();
+        Dimension thumbSize = record.thumbnailSize(size);
+        // 縦長のクロップは高さに合わせて縮める
+        if (thumbSize.height > size) {
+            thumbSize = new Dimension(Math.max(1, thumbSize.width * size / thumbSize.height), size);
+        }
+        int tx = x + (size - thumbSize.width) / 2;
+        int ty = y + (size - thumbSize.height) / 2;
+
+        BufferedImage thumbnail = cache.get(record, onLoaded);
+        if (thumbnail != null) {
+            g.drawImage(thumbnail, tx, ty, thumbSize.width, thumbSize.height, null);
+        } else {
+            g.setColor(Color.LIGHT_GRAY);
+            g.fillRect(tx, ty, thumbSize.width, thumbSize.height);
+        }
+        g.setColor(Color.BLACK);
+        g.drawRect(tx, ty, thumbSize.width - 1, thumbSize.height - 1);
+    }
+
+    public int getIconWidth() {
+        return cache.getThumbnailWidth();
+    }
+
+    public int getIconHeight() {
+        return cache.getThumbnailWidth();
+    }
+}
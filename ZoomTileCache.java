@@ -0,0 +1,216 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 拡大表示用に、元画像の表示範囲だけを倍率に応じて間引いてデコードし、タイルとして保持するキャッシュ
+// タイルは間引き量（倍率ごとのレベル）と位置で管理し、使用バイト数の上限を超えたら古いものから捨てる
+public class ZoomTileCache {
+    // デコード後のタイル1枚の一辺の画素数
+    public static final int TILE_SIZE = 512;
+
+    private static class Key {
+        final int step;
+        final int col;
+        final int row;
+
+        Key(int step, int col, int row) {
+            this.step = step;
+            this.col = col;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return step == k.step && col == k.col && row == k.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(step, col, row);
+        }
+    }
+
+    private final ImageSource source;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, BufferedImage> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Key> pending = new HashSet<>();
+    private final ExecutorService loader;
+    // 最後に描画したときに表示範囲にあったタイル（それ以外の読み込み待ちは捨てる）
+    private Set<Key> wanted = Collections.emptySet();
+    private long usedBytes;
+
+    public ZoomTileCache(ImageSource source, long maxBytes) {
+        this.source = source;
+        this.maxBytes = maxBytes;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.loader = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "zoom-tile-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 表示倍率 scale（元画像1画素あたりの画面画素数）に対して、画質を落とさない最大の間引き量（2のべき乗）
+    public static int stepFor(double scale) {
+        int step = 1;
+        while (step * 2 <= 1 / scale) {
+            step *= 2;
+        }
+        return step;
+    }
+
+    // 元画像を (originX, originY) から scale 倍で表示したときの、画面の visible に掛かるタイルを描画する
+    // 読み込み済みでないタイルは描かずに読み込みを始め（完了したら onLoaded を EDT で呼ぶ）、その画面上の範囲を返す
+    public List<Rectangle> draw(Graphics2D g2d, double originX, double originY, double scale,
+                                Rectangle visible, Runnable onLoaded) {
+        int step = stepFor(scale);
+        int span = TILE_SIZE * step; // タイル1枚が覆う元画像の画素数
+        int cols = (source.getWidth() + span - 1) / span;
+        int rows = (source.getHeight() + span - 1) / span;
+        int c0 = Math.max(0, (int) Math.floor((visible.x - originX) / scale / span));
+        int r0 = Math.max(0, (int) Math.floor((visible.y - originY) / scale / span));
+        int c1 = Math.min(cols - 1, (int) Math.floor((visible.x + visible.width - originX) / scale / span));
+        int r1 = Math.min(rows - 1, (int) Math.floor((visible.y + visible.height - originY) / scale / span));
+
+        Set<Key> visibleKeys = new HashSet<>();
+        List<Key> missing = new ArrayList<>();
+        List<Rectangle> missingRects = new ArrayList<>();
+        // 拡大時は画素の境界がはっきり見えるようにする
+        Object interpolation = scale >= 1 ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+                                          : RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                Key key = new Key(step, c, r);
+                visibleKeys.add(key);
+                Rectangle region = tileRegion(key);
+                Rectangle screen = CropGeometry.toScreen(region, originX, originY, scale);
+                BufferedImage tile;
+                synchronized (this) {
+                    tile = tiles.get(key);
+                }
+                if (tile != null) {
+                    g2d.drawImage(tile, screen.x, screen.y, screen.width, screen.height, null);
+                } else {
+                    missing.add(key);
+                    missingRects.add(screen);
+                }
+            }
+        }
+
+        synchronized (this) {
+            wanted = visibleKeys;
+            // 同じ行のタイルはまとめて1回でデコードする（JPEGなどは領域の上までを毎回読み飛ばすため）
+            List<Key> band = new ArrayList<>();
+            for (Key key : missing) {
+                if (!band.isEmpty() && band.get(0).row != key.row) {
+                    submit(band, onLoaded);
+                    band = new ArrayList<>();
+                }
+                if (pending.add(key)) {
+                    band.add(key);
+                }
+            }
+            submit(band, onLoaded);
+        }
+        return missingRects;
+    }
+
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    // タイルが覆う元画像の範囲
+    private Rectangle tileRegion(Key key) {
+        int span = TILE_SIZE * key.step;
+        int x = key.col * span;
+        int y = key.row * span;
+        return new Rectangle(x, y, Math.min(span, source.getWidth() - x), Math.min(span, source.getHeight() - y));
+    }
+
+    private void submit(List<Key> band, Runnable onLoaded) {
+        if (!band.isEmpty()) {
+            loader.execute(() -> load(band, onLoaded));
+        }
+    }
+
+    // 同じ行で左から並んだタイルを読み込む
+    private void load(List<Key> band, Runnable onLoaded) {
+        try {
+            List<Key> keys = new ArrayList<>();
+            synchronized (this) {
+                for (Key key : band) {
+                    // 読み込み待ちの間に表示範囲や倍率が変わったものは読まない
+                    if (wanted.contains(key)) {
+                        keys.add(key);
+                    }
+                }
+            }
+            if (keys.isEmpty()) {
+                return;
+            }
+            Rectangle region = tileRegion(keys.get(0)).union(tileRegion(keys.get(keys.size() - 1)));
+            int step = keys.get(0).step;
+            BufferedImage decoded = source.readRegion(region, step);
+            if (!decoded.getColorModel().hasAlpha()) {
+                // 毎フレーム拡大描画するので、最も速く描けるTYPE_INT_RGBにしておく
+                decoded = RasterOps.toIntRGB(decoded);
+            }
+            synchronized (this) {
+                for (Key key : keys) {
+                    // タイルの境界は step の倍数なので、間引いた画像上でもずれない
+                    Rectangle tileRect = tileRegion(key);
+                    BufferedImage tile = RasterOps.crop(decoded, new Rectangle((tileRect.x - region.x) / step, 0,
+                        (tileRect.width + step - 1) / step, decoded.getHeight()));
+                    tiles.put(key, tile);
+                    usedBytes += sizeOf(tile);
+                }
+                evict();
+            }
+            SwingUtilities.invokeLater(onLoaded);
+        } catch (IOException ex) {
+            System.err.println("Failed to load tile of " + source.getFile() + ": " + ex.getMessage());
+        } finally {
+            synchronized (this) {
+                pending.removeAll(band);
+            }
+        }
+    }
+
+    // 表示中のタイルは残す
+    private void evict() {
+        Iterator<Map.Entry<Key, BufferedImage>> it = tiles.entrySet().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, BufferedImage> e = it.next();
+            if (!wanted.contains(e.getKey())) {
+                usedBytes -= sizeOf(e.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+}